@@ -8,6 +8,11 @@ public final class JobInfo {
     private String Status;
     private Integer Priority;
     private JobSummary JobSummary;
+    private String ParentID;
+    private Boolean ParameterizedJob;
+    private String Namespace;
+    private Long SubmitTime;
+    private Long ModifyIndex;
 
     public JobInfo(
             String ID,
@@ -72,4 +77,56 @@ public final class JobInfo {
         this.JobSummary = JobSummary;
     }
 
+    public String getParentID() {
+        return ParentID;
+    }
+
+    public void setParentID(String parentID) {
+        ParentID = parentID;
+    }
+
+    /**
+     * @return namespace of the job (falls back to the namespace of the job summary)
+     */
+    public String getNamespace() {
+        if (Namespace == null && JobSummary != null) {
+            return JobSummary.getNamespace();
+        }
+        return Namespace;
+    }
+
+    public void setNamespace(String namespace) {
+        Namespace = namespace;
+    }
+
+    /**
+     * @return submit time of the job in nanoseconds since epoch
+     */
+    public Long getSubmitTime() {
+        return SubmitTime;
+    }
+
+    public void setSubmitTime(Long submitTime) {
+        SubmitTime = submitTime;
+    }
+
+    public boolean isParameterizedJob() {
+        return Boolean.TRUE.equals(ParameterizedJob);
+    }
+
+    public void setParameterizedJob(Boolean parameterizedJob) {
+        ParameterizedJob = parameterizedJob;
+    }
+
+    /**
+     * @return Raft index of the last modification of the job
+     */
+    public Long getModifyIndex() {
+        return ModifyIndex;
+    }
+
+    public void setModifyIndex(Long modifyIndex) {
+        ModifyIndex = modifyIndex;
+    }
+
 }
@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Decides how many of the requested workers of a template may be launched when the instance caps of a {@link NomadCloud} are reached.
+ * As long as there are enough free instances for the demand of all templates, every request is admitted (up to the cap of its template).
+ * Otherwise the free instances are shared among all templates with recent demand by smooth weighted round-robin (see
+ * {@link NomadWorkerTemplate#getWeight()}). Instances which are assigned to another template are reserved for it until it asks for them
+ * (the NodeProvisioner asks once per label and cycle) or the reservation expires.
+ */
+final class NomadAdmissionController {
+
+    private static final long DEMAND_TTL = 60000;
+    private static final long RESERVATION_TTL = 30000;
+
+    /**
+     * Demand, reservation and round-robin weight of a single template.
+     */
+    private static final class Entry {
+        private int demand;
+        private long demandAt;
+        private int reserved;
+        private long reservedAt;
+        private int currentWeight;
+    }
+
+    private final Map<NomadWorkerTemplate, Entry> entries = new HashMap<>();
+
+    /**
+     * @param template the template which asks for workers
+     * @param wanted number of workers the template asks for
+     * @param cloudFree number of instances which may still be launched by the cloud ({@link Integer#MAX_VALUE} if there is no cap)
+     * @param templateFree provides the number of instances which may still be launched by a template
+     * @return number of workers which may be launched now
+     */
+    synchronized int admit(NomadWorkerTemplate template, int wanted, int cloudFree, ToIntFunction<NomadWorkerTemplate> templateFree) {
+        long now = System.currentTimeMillis();
+        expire(now);
+
+        Entry entry = entries.computeIfAbsent(template, t -> new Entry());
+        entry.demand = wanted;
+        entry.demandAt = now;
+
+        int reservedByOthers = 0;
+        for (Entry other : entries.values()) {
+            if (other != entry) {
+                reservedByOthers += other.reserved;
+            }
+        }
+        int free = Math.max(0, cloudFree - reservedByOthers);
+        int need = Math.max(0, Math.min(wanted, templateFree.applyAsInt(template)));
+
+        // the reservation of this template is used first
+        int granted = Math.min(Math.min(entry.reserved, need), free);
+        entry.reserved = 0;
+        free -= granted;
+        need -= granted;
+
+        // all other templates which are still waiting for instances compete for the remaining ones
+        List<NomadWorkerTemplate> contenders = new ArrayList<>();
+        Map<NomadWorkerTemplate, Integer> needs = new HashMap<>();
+        int totalNeed = need;
+        for (Map.Entry<NomadWorkerTemplate, Entry> e : entries.entrySet()) {
+            NomadWorkerTemplate other = e.getKey();
+            if (other == template) {
+                continue;
+            }
+            int otherNeed = Math.min(e.getValue().demand - e.getValue().reserved, templateFree.applyAsInt(other) - e.getValue().reserved);
+            if (otherNeed > 0) {
+                contenders.add(other);
+                needs.put(other, otherNeed);
+                totalNeed += otherNeed;
+            }
+        }
+        if (totalNeed <= free) {
+            granted += need;
+        } else if (need > 0) {
+            contenders.add(template);
+            needs.put(template, need);
+            granted += share(template, free, contenders, needs, now);
+        }
+        entry.demand -= granted;
+        return granted;
+    }
+
+    /**
+     * Assigns the free instances one by one to the template with the highest current weight (smooth weighted round-robin). Instances
+     * which are assigned to other templates are reserved for them.
+     * @return number of instances which were assigned to the given template
+     */
+    private int share(NomadWorkerTemplate template, int free, List<NomadWorkerTemplate> contenders, Map<NomadWorkerTemplate, Integer> needs,
+            long now) {
+        int granted = 0;
+        for (int i = 0; i < free && !contenders.isEmpty(); i++) {
+            int totalWeight = 0;
+            NomadWorkerTemplate best = null;
+            for (NomadWorkerTemplate contender : contenders) {
+                Entry e = entries.get(contender);
+                e.currentWeight += contender.getWeight();
+                totalWeight += contender.getWeight();
+                if (best == null || e.currentWeight > entries.get(best).currentWeight) {
+                    best = contender;
+                }
+            }
+            Entry winner = entries.get(best);
+            winner.currentWeight -= totalWeight;
+            if (best == template) {
+                granted++;
+            } else {
+                if (winner.reserved == 0) {
+                    winner.reservedAt = now;
+                }
+                winner.reserved++;
+            }
+            int remaining = needs.get(best) - 1;
+            needs.put(best, remaining);
+            if (remaining <= 0) {
+                contenders.remove(best);
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * Forgets old demand and expired reservations (e.g. the template does not need the instances anymore).
+     */
+    private void expire(long now) {
+        entries.values().removeIf(e -> {
+            if (now - e.reservedAt > RESERVATION_TTL) {
+                e.reserved = 0;
+            }
+            return e.reserved == 0 && now - e.demandAt > DEMAND_TTL;
+        });
+    }
+
+    /**
+     * @return number of instances which are currently reserved for a given template
+     */
+    synchronized int getReserved(NomadWorkerTemplate template) {
+        Entry entry = entries.get(template);
+        return entry != null ? entry.reserved : 0;
+    }
+
+}
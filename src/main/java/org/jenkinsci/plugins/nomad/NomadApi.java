@@ -2,7 +2,11 @@ package org.jenkinsci.plugins.nomad;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.nomad.Api.JobInfo;
@@ -10,21 +14,44 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.security.GeneralSecurityException;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.Map;
 
+import javax.net.ssl.SSLException;
+
+import hudson.Util;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
+import jenkins.util.Timer;
 import okhttp3.Call;
+import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -37,8 +64,32 @@ public final class NomadApi {
 
     public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
     private static final Logger LOGGER = Logger.getLogger(NomadApi.class.getName());
+    /** Shared instance, Gson is thread-safe. */
+    static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final int MAX_NORMALIZED_JOB_TEMPLATES = 32;
+    private static final String[] EVENT_TOPICS = {"Job", "Allocation", "Evaluation"};
+    private static final String META_WORKER_NAME = "worker_name";
+    private static final String META_WORKER_SECRET = "worker_secret";
+    private static final long TLS_CHECK_INTERVAL = 10000;
+    private static final long HEALTH_CHECK_INTERVAL = 10000;
+    private static final long HEALTH_CHECK_TIMEOUT = 2000;
     private final NomadCloud cloud;
+    private final Map<String, Registration> registeredJobs = new HashMap<>();
+    private final Map<String, NomadJobTemplate> normalizedJobTemplates = new LinkedHashMap<String, NomadJobTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NomadJobTemplate> eldest) {
+            return size() > MAX_NORMALIZED_JOB_TEMPLATES;
+        }
+    };
+    private String normalizedJobTemplatesUrl;
+    private final NomadRetryPolicy retryPolicy = new NomadRetryPolicy();
+    private final NomadApiMetrics metrics = new NomadApiMetrics();
     private volatile OkHttpClient client;
+    private volatile NomadEndpoints endpoints;
+    private final AtomicBoolean healthCheckRunning = new AtomicBoolean();
+    private volatile long healthCheckedAt;
+    private volatile String tlsFingerprint;
+    private volatile long tlsCheckedAt;
 
     NomadApi(NomadCloud cloud) {
         this.cloud = cloud;
@@ -49,9 +100,24 @@ public final class NomadApi {
      * @return FormValidation object with kind = OK or ERROR and a message.
      */
     public FormValidation checkConnection() {
-        Request request = createRequestBuilder("/v1/agent/self", null)
-                .build();
+        List<NomadEndpoints.Endpoint> servers = endpoints().getEndpoints();
+        if (servers.size() <= 1) {
+            return checkConnection(createRequestBuilder("/v1/agent/self", null).build());
+        }
+        List<FormValidation> results = new ArrayList<>();
+        for (NomadEndpoints.Endpoint server : servers) {
+            Request request = createRequestBuilder("/v1/agent/self", null).build();
+            request = request.newBuilder()
+                    .url(endpoints().moveTo(request.url(), server))
+                    .tag(NomadEndpoints.Endpoint.class, server)
+                    .build();
+            FormValidation result = checkConnection(request);
+            results.add(result.kind == FormValidation.Kind.OK ? result : FormValidation.error(server.getUrl() + ": " + result.getMessage()));
+        }
+        return FormValidation.aggregate(results);
+    }
 
+    private FormValidation checkConnection(Request request) {
         try (Response response = executeRequest(request)) {
             if (response.isSuccessful()) {
                 return FormValidation.ok("Nomad API request succeeded.");
@@ -76,10 +142,10 @@ public final class NomadApi {
         String id = UUID.randomUUID().toString();
 
         Request request = createRequestBuilder("/v1/job/" + id + "/plan", null)
-                .post(RequestBody.create(buildWorkerJob(id, "", template), JSON))
+                .post(getJobTemplate(template).toRequestBody(id, "", template.getRemoteFs()))
                 .build();
 
-        try (Response response = executeRequest(request)) {
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.PLAN, request, null)) {
             if (response.isSuccessful()) {
                 return FormValidation.ok("OK");
             }
@@ -92,48 +158,369 @@ public final class NomadApi {
     }
 
     /**
-     * Creates a new job in Nomad. It logs when it was not successful but there is no further indication whether this was successful or not.
+     * Asks Nomad by a dry run (see /v1/job/:id/plan) how many workers of a given template could be placed right now. Every task group of
+     * the job is planned with the given count, Nomad reports the allocations which could not be placed.
+     * @param template Template of the workers
+     * @param count number of workers to probe
+     * @return number of workers which could be placed (at most count)
+     * @throws IOException if Nomad did not answer the plan request
+     */
+    int planCapacity(NomadWorkerTemplate template, int count) throws IOException {
+        String id = template.getPrefix() + "-capacity-probe";
+        JsonObject jobJson = GSON.fromJson(getJobTemplate(template).render(id, "", template.getRemoteFs()), JsonObject.class);
+        JsonObject job = jobJson != null ? jobJson.getAsJsonObject("Job") : null;
+        JsonArray groups = job != null ? job.getAsJsonArray("TaskGroups") : null;
+        if (groups == null) {
+            throw new IOException("Job template of " + template.getPrefix() + " does not contain any task group");
+        }
+        job.addProperty("ID", id);
+        job.addProperty("Name", id);
+        for (int i = 0; i < groups.size(); i++) {
+            groups.get(i).getAsJsonObject().addProperty("Count", count);
+        }
+        jobJson.addProperty("Diff", false);
+
+        Request request = createRequestBuilder("/v1/job/" + id + "/plan", null)
+                .post(RequestBody.create(jobJson.toString(), JSON))
+                .build();
+
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.PLAN, request, null)) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Plan of " + template.getPrefix() + " failed with code " + response.code());
+            }
+            JsonObject plan = GSON.fromJson(body.charStream(), JsonObject.class);
+            JsonObject failed = plan != null && plan.has("FailedTGAllocs") && plan.get("FailedTGAllocs").isJsonObject()
+                    ? plan.getAsJsonObject("FailedTGAllocs") : null;
+            int placeable = count;
+            if (failed != null) {
+                for (Map.Entry<String, JsonElement> group : failed.entrySet()) {
+                    JsonObject metric = group.getValue().getAsJsonObject();
+                    int coalesced = metric.has("CoalescedFailures") ? metric.get("CoalescedFailures").getAsInt() : 0;
+                    placeable = Math.min(placeable, Math.max(0, count - coalesced - 1));
+                }
+            }
+            return placeable;
+        }
+    }
+
+    /**
+     * Creates a new job in Nomad (or dispatches a parameterized job when {@link NomadWorkerTemplate#isDispatch()} is set). Transient
+     * errors are retried (see {@link NomadRetryPolicy}).
      * @param workerName Name of the corresponding {@link NomadWorker} (e.g. jenkins-1234)
      * @param jnlpSecret Secret used by the jenkins agent to connect to Jenkins
      * @param template Template used to create a new Job in Nomad
+     * @return ID of the started job (the worker name unless the job was dispatched)
+     * @throws IOException if Nomad did not accept the job (after all retries)
      */
-    public String startWorker(String workerName, String jnlpSecret, NomadWorkerTemplate template) {
+    public String startWorker(String workerName, String jnlpSecret, NomadWorkerTemplate template) throws IOException {
+
+        if (template.isDispatch()) {
+            return dispatchWorker(workerName, jnlpSecret, template);
+        }
+
+        NomadJobTemplate jobTemplate = getJobTemplate(template);
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, jobTemplate.render(workerName, jnlpSecret, template.getRemoteFs()));
+        }
+
+        Request request = createRequestBuilder("/v1/jobs", null)
+                .put(jobTemplate.toRequestBody(workerName, jnlpSecret, template.getRemoteFs()))
+                .build();
 
-        String workerJob = buildWorkerJob(
-                workerName,
-                jnlpSecret,
-                template
-        );
+        // a failed attempt may have registered the job anyway, so it is only registered again if it does not exist
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.REGISTER, request,
+                () -> jobExists(workerName, jobTemplate.getNamespace(), jobTemplate.getRegion()))) {
+            checkSuccessful(response, request);
+        }
+        return workerName;
+    }
 
-        LOGGER.log(Level.FINE, workerJob);
+    /**
+     * Creates a single job in Nomad for several workers of a template (see {@link NomadWorkerTemplate#getBulkSize()}). The job contains the
+     * task group of the template once per worker, each named like its worker and rendered with the worker's name and secret. So one
+     * registration (and one evaluation) starts all workers and a single worker can be stopped by scaling its task group down.
+     * @param jobId ID of the job (e.g. jenkins-batch-1234)
+     * @param workerNames Names of the corresponding {@link NomadWorker}s
+     * @param jnlpSecrets Secrets used by the jenkins agents to connect to Jenkins (in the same order as the worker names)
+     * @param template Template used to create the task groups, it must contain exactly one task group
+     * @throws IOException if Nomad did not accept the job (after all retries)
+     */
+    void startWorkers(String jobId, List<String> workerNames, List<String> jnlpSecrets, NomadWorkerTemplate template) throws IOException {
+        NomadJobTemplate jobTemplate = getJobTemplate(template);
+        JsonObject jobJson = null;
+        JsonArray groups = new JsonArray();
+        for (int i = 0; i < workerNames.size(); i++) {
+            JsonObject rendered = GSON.fromJson(jobTemplate.render(workerNames.get(i), jnlpSecrets.get(i), template.getRemoteFs()),
+                    JsonObject.class);
+            JsonArray taskGroups = rendered != null && rendered.has("Job") ? rendered.getAsJsonObject("Job").getAsJsonArray("TaskGroups") : null;
+            if (taskGroups == null || taskGroups.size() != 1) {
+                throw new IOException("Bulk launch of template " + template.getPrefix() + " requires a job with exactly one task group");
+            }
+            JsonObject group = taskGroups.get(0).getAsJsonObject();
+            group.addProperty("Name", workerNames.get(i));
+            group.addProperty("Count", 1);
+            groups.add(group);
+            if (jobJson == null) {
+                jobJson = rendered;
+            }
+        }
+        if (jobJson == null) {
+            return;
+        }
+        JsonObject job = jobJson.getAsJsonObject("Job");
+        job.addProperty("ID", jobId);
+        job.addProperty("Name", jobId);
+        job.add("TaskGroups", groups);
 
         Request request = createRequestBuilder("/v1/jobs", null)
-                .put(RequestBody.create(workerJob, JSON))
+                .put(RequestBody.create(jobJson.toString(), JSON))
                 .build();
 
-        checkResponseAndGetBody(request);
-        return workerJob;
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.REGISTER, request,
+                () -> jobExists(jobId, jobTemplate.getNamespace(), jobTemplate.getRegion()))) {
+            checkSuccessful(response, request);
+        }
     }
 
     /**
-     * Deletes an existing job in Nomad. It logs when it was not successful but there is no further indication whether this was successful
-     * or not.
+     * Starts a new worker by dispatching the parameterized job of the given template. The parameterized job gets registered on first use
+     * and again whenever the template changes. Only the worker name and secret are sent to Nomad as dispatch meta data.
      * @param workerName Name of the corresponding {@link NomadWorker} (e.g. jenkins-1234)
+     * @param jnlpSecret Secret used by the jenkins agent to connect to Jenkins
+     * @param template Template used to create the parameterized job in Nomad
+     * @return ID of the dispatched job
+     * @throws IOException if the dispatch failed or Nomad did not return the ID of the dispatched job
+     */
+    private String dispatchWorker(String workerName, String jnlpSecret, NomadWorkerTemplate template) throws IOException {
+        String parentID = registerParameterizedJob(template);
+        NomadJobTemplate jobTemplate = getJobTemplate(template);
+
+        JsonObject meta = new JsonObject();
+        meta.addProperty(META_WORKER_NAME, workerName);
+        meta.addProperty(META_WORKER_SECRET, jnlpSecret);
+        JsonObject dispatch = new JsonObject();
+        dispatch.add("Meta", meta);
+        // makes retries safe, Nomad returns the job which was already dispatched with the same token
+        dispatch.addProperty("IdempotencyToken", workerName);
+
+        Request request = createRequestBuilder("/v1/job/" + encodeJobID(parentID) + "/dispatch",
+                jobParams(jobTemplate.getNamespace(), jobTemplate.getRegion()))
+                .post(RequestBody.create(dispatch.toString(), JSON))
+                .build();
+
+        String body;
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.DISPATCH, request, null)) {
+            if (response.code() == 404) {
+                // the parameterized job was deleted in Nomad, so the next dispatch registers it again
+                forgetParameterizedJob(parentID);
+            }
+            body = checkSuccessful(response, request);
+        }
+        // the parent ID must never be used as the job of a worker, stopping the worker would stop the parameterized job
+        try {
+            JsonObject response = GSON.fromJson(body, JsonObject.class);
+            if (response != null && response.has("DispatchedJobID") && !response.get("DispatchedJobID").isJsonNull()) {
+                return response.get("DispatchedJobID").getAsString();
+            }
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            throw new IOException("Unable to read dispatch response of job " + parentID + ": " + e.getMessage(), e);
+        }
+        throw new IOException("Nomad did not return the ID of the job dispatched from " + parentID);
+    }
+
+    /**
+     * Registers the parameterized job of a given template in Nomad unless the very same job was already registered by this instance. The
+     * registration is sent without holding a lock, concurrent dispatches of the same job wait for it while other jobs are not affected.
+     * @param template Template used to create the parameterized job
+     * @return ID of the parameterized job
+     * @throws IOException if the job could not be registered
+     */
+    String registerParameterizedJob(NomadWorkerTemplate template) throws IOException {
+        String parameterizedJob = buildParameterizedJob(template);
+        String parentID = parameterizedJobID(template);
+
+        Registration registration;
+        boolean owner = false;
+        synchronized (registeredJobs) {
+            registration = registeredJobs.get(parentID);
+            if (registration == null || !registration.job.equals(parameterizedJob)) {
+                registration = new Registration(parameterizedJob);
+                registeredJobs.put(parentID, registration);
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            registration.await(parentID);
+            return parentID;
+        }
+
+        LOGGER.log(Level.INFO, "Registering parameterized job " + parentID);
+        Request request = createRequestBuilder("/v1/jobs", null)
+                .put(RequestBody.create(parameterizedJob, JSON))
+                .build();
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.REGISTER, request, null)) {
+            checkSuccessful(response, request);
+            registration.done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            synchronized (registeredJobs) {
+                registeredJobs.remove(parentID, registration);
+            }
+            registration.done.completeExceptionally(e);
+            throw e;
+        }
+        return parentID;
+    }
+
+    /**
+     * Forgets that a given parameterized job was registered, so that it is registered again on next use.
+     */
+    private void forgetParameterizedJob(String parentID) {
+        synchronized (registeredJobs) {
+            registeredJobs.remove(parentID);
+        }
+    }
+
+    /**
+     * A registration of a parameterized job which is either in flight or done.
+     */
+    private static final class Registration {
+        private final String job;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Registration(String job) {
+            this.job = job;
+        }
+
+        /**
+         * Waits until the registration is done.
+         * @throws IOException if the registration failed
+         */
+        private void await(String parentID) throws IOException {
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the registration of job " + parentID);
+            } catch (ExecutionException e) {
+                throw new IOException("Registration of job " + parentID + " failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Creates from a given job template a parameterized batch job. The worker placeholders are replaced by the dispatch meta data so that
+     * every dispatched job gets its own worker name and secret.
+     * @param template Template used to create the parameterized job
+     * @return Nomad Job in JSON format which can be sent to Nomad via the /v1/jobs REST API
+     */
+    String buildParameterizedJob(NomadWorkerTemplate template) {
+        String parentID = parameterizedJobID(template);
+        String jobTemplate = getJobTemplate(template).render(
+                "${NOMAD_META_" + META_WORKER_NAME + "}",
+                "${NOMAD_META_" + META_WORKER_SECRET + "}",
+                template.getRemoteFs());
+
+        JsonObject jobJson = GSON.fromJson(jobTemplate, JsonObject.class);
+        JsonObject job = jobJson.getAsJsonObject("Job");
+        job.addProperty("ID", parentID);
+        job.addProperty("Name", parentID);
+        job.addProperty("Type", "batch");
+
+        JsonArray metaRequired = new JsonArray();
+        metaRequired.add(META_WORKER_NAME);
+        metaRequired.add(META_WORKER_SECRET);
+        JsonObject parameterized = new JsonObject();
+        parameterized.addProperty("Payload", "forbidden");
+        parameterized.add("MetaRequired", metaRequired);
+        job.add("ParameterizedJob", parameterized);
+
+        return jobJson.toString();
+    }
+
+    /**
+     * Provides the ID of the parameterized job of a given template (e.g. jenkins-parameterized-1a2b3c4d). The labels are part of the ID so
+     * that templates with the same prefix do not overwrite each others job.
+     */
+    static String parameterizedJobID(NomadWorkerTemplate template) {
+        return template.getPrefix() + "-parameterized-" + String.format("%08x", template.getLabels().hashCode());
+    }
+
+    /**
+     * Deletes an existing job in Nomad. It logs when it was not successful.
+     * @param workerName Job ID of the corresponding {@link NomadWorker} (e.g. jenkins-1234)
      * @param namespace Name of the nomad namespace where job is running
      * @param region Name of the region where job is running
+     * @return true if the job was deleted or does not exist (anymore) otherwise false
      */
-    public void stopWorker(String workerName, String namespace, String region) {
-        Map<String,String> params = new HashMap<>();
-        if (namespace != null)
-            params.put("namespace", namespace);
-        if (region != null && !region.equals("global"))
-            params.put("region", region);
+    public boolean stopWorker(String workerName, String namespace, String region) {
+        return stopWorker(workerName, namespace, region, NomadRetryPolicy.Operation.STOP);
+    }
 
-        Request request = createRequestBuilder("/v1/job/" + workerName, params)
+    /**
+     * Same as {@link #stopWorker(String, String, String)} but retried according to a given operation (e.g. not at all when the caller
+     * retries on its own).
+     */
+    boolean stopWorker(String workerName, String namespace, String region, NomadRetryPolicy.Operation operation) {
+        Request request = createRequestBuilder("/v1/job/" + encodeJobID(workerName), jobParams(namespace, region))
                 .delete()
                 .build();
 
-        checkResponseAndGetBody(request);
+        try (Response response = executeWithRetry(operation, request, null);
+             ResponseBody body = response.body()
+        ) {
+            if (response.isSuccessful() || response.code() == 404) {
+                return true;
+            }
+            LOGGER.log(Level.SEVERE, "Request was not successful! Code: "+response.code()+", Body: '"+(body != null ? body.string() : "")+"'"+"URL: "+request.url());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage() + "\nRequest:\n" + request);
+        }
+        return false;
+    }
+
+    /**
+     * Stops a single worker of a bulk launch by scaling its task group down to 0 (see
+     * {@link #startWorkers(String, List, List, NomadWorkerTemplate)}). It logs when it was not successful.
+     * @param jobId ID of the job which contains the worker
+     * @param taskGroup Name of the task group of the worker (the worker name)
+     * @param namespace Name of the nomad namespace where job is running
+     * @param region Name of the region where job is running
+     * @return true if the task group was scaled down or the job does not exist (anymore) otherwise false
+     */
+    public boolean scaleDownWorker(String jobId, String taskGroup, String namespace, String region) {
+        return scaleDownWorker(jobId, taskGroup, namespace, region, NomadRetryPolicy.Operation.STOP);
+    }
+
+    /**
+     * Same as {@link #scaleDownWorker(String, String, String, String)} but retried according to a given operation (e.g. not at all when
+     * the caller retries on its own).
+     */
+    boolean scaleDownWorker(String jobId, String taskGroup, String namespace, String region, NomadRetryPolicy.Operation operation) {
+        JsonObject target = new JsonObject();
+        target.addProperty("Group", taskGroup);
+        JsonObject scale = new JsonObject();
+        scale.addProperty("Count", 0);
+        scale.add("Target", target);
+        scale.addProperty("Message", "Jenkins worker " + taskGroup + " terminated");
+
+        Request request = createRequestBuilder("/v1/job/" + encodeJobID(jobId) + "/scale", jobParams(namespace, region))
+                .post(RequestBody.create(scale.toString(), JSON))
+                .build();
+
+        try (Response response = executeWithRetry(operation, request, null);
+             ResponseBody body = response.body()
+        ) {
+            if (response.isSuccessful() || response.code() == 404) {
+                return true;
+            }
+            LOGGER.log(Level.SEVERE, "Request was not successful! Code: "+response.code()+", Body: '"+(body != null ? body.string() : "")+"'"+"URL: "+request.url());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage() + "\nRequest:\n" + request);
+        }
+        return false;
     }
 
     /**
@@ -143,6 +530,20 @@ public final class NomadApi {
      * @return Array of {@link JobInfo} objects or an empty list if there are no Jobs at all or when something was wrong
      */
     public JobInfo[] getRunningWorkers(String prefix) {
+        List<JobInfo> jobs = new ArrayList<>();
+        forEachJob(prefix, job -> true, jobs::add);
+        return jobs.toArray(new JobInfo[0]);
+    }
+
+    /**
+     * Reads all existing jobs in Nomad with the same prefix one by one, so that the job list is never loaded into memory as a whole.
+     * Jobs which do not match the filter are dropped right away. It logs when it was not successful.
+     * @param prefix Prefix of the job (e.g.jenkins when you want all jobs where the name starts with jenkins)
+     * @param filter Jobs which should be passed to the consumer (e.g. only running jobs)
+     * @param consumer Called for every job which matches the filter
+     * @return true if the whole job list was read otherwise false
+     */
+    public boolean forEachJob(String prefix, Predicate<JobInfo> filter, Consumer<JobInfo> consumer) {
         Map<String,String> params = new HashMap<>();
         params.put("namespace", "*");
         params.put("prefix", prefix);
@@ -150,8 +551,35 @@ public final class NomadApi {
         Request request = createRequestBuilder("/v1/jobs", params)
                 .get()
                 .build();
-        String body = checkResponseAndGetBody(request);
-        return new Gson().fromJson(body, JobInfo[].class);
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.LIST, request, null);
+             ResponseBody body = response.body()
+        ) {
+            if (!response.isSuccessful() || body == null) {
+                LOGGER.log(Level.SEVERE, "Request was not successful! Code: "+response.code()+", Body: '"+(body != null ? body.string() : "")+"'"+"URL: "+request.url());
+                return false;
+            }
+            readJobs(body.charStream(), filter, consumer);
+            return true;
+        } catch (IOException | JsonParseException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage() + "\nRequest:\n" + request);
+        }
+        return false;
+    }
+
+    /**
+     * Reads a JSON array of jobs element by element.
+     */
+    private static void readJobs(Reader in, Predicate<JobInfo> filter, Consumer<JobInfo> consumer) throws IOException {
+        try (JsonReader reader = new JsonReader(in)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JobInfo job = GSON.fromJson(reader, JobInfo.class);
+                if (job != null && filter.test(job)) {
+                    consumer.accept(job);
+                }
+            }
+            reader.endArray();
+        }
     }
 
     /**
@@ -159,70 +587,158 @@ public final class NomadApi {
      * @param jobID Id of the job
      * @param namespace Name of the nomad namespace where job is running
      * @return {@link JSONObject} object
+     * @throws IOException if the request failed or was not successful
      */
-    public JSONObject getRunningWorker(String jobID, String namespace) {
+    public JSONObject getRunningWorker(String jobID, String namespace) throws IOException {
         Map<String,String> params = new HashMap<>();
         if (namespace != null)
             params.put("namespace", namespace);
         Request request = createRequestBuilder("/v1/job/" + jobID, params)
                 .get()
                 .build();
-        String body = checkResponseAndGetBody(request);
-        return new JSONObject(body);
+        try (Response response = executeRequest(request)) {
+            return new JSONObject(checkSuccessful(response, request));
+        }
     }
 
     /**
-     * Creates from a given job template a Nomad Job which can be sent to Nomad.
-     * @param name Name of the Nomad Job (e.g. jenkins-1234)
-     * @param secret Secret used by the jenkins agent to connect to Jenkins
-     * @param template Template used to create a new Job in Nomad
-     * @return Nomad Job in JSON format which is can be sent to Nomad via the /v1/jobs REST API
+     * Lists all jobs with a given prefix by using a blocking query. Nomad holds the request until the job list changes (i.e. its index is
+     * greater than the given index) or until the wait time is over.
+     * @param prefix Prefix of the jobs (e.g. jenkins)
+     * @param index Index of the previous result (see X-Nomad-Index), 0 to get the current list right away
+     * @param waitSeconds Maximum time Nomad holds the request
+     * @return the job list including its index
+     * @throws IOException if the request failed or was not successful
      */
-    String buildWorkerJob(
-            String name,
-            String secret,
-            NomadWorkerTemplate template
-    ) {
+    JobList watchJobs(String prefix, long index, long waitSeconds) throws IOException {
+        Map<String,String> params = new HashMap<>();
+        params.put("namespace", "*");
+        params.put("prefix", prefix);
+        if (index > 0) {
+            params.put("index", Long.toString(index));
+            params.put("wait", waitSeconds + "s");
+        }
 
-        String job = normalizeJobTemplate(template.getJobTemplate())
-                .replace("%WORKER_NAME%", name)
-                .replace("%WORKER_SECRET%", secret)
-                .replace("%WORKER_DIR%", template.getRemoteFs());
+        Request request = createRequestBuilder("/v1/jobs", params)
+                .get()
+                .build();
 
-        LOGGER.log(Level.FINE, String.format("job:%n%s", job));
-        return job;
+        // Nomad adds a jitter of up to wait / 16 to the wait time
+        UnaryOperator<OkHttpClient> longPoll = c -> c.newBuilder()
+                .readTimeout(waitSeconds + waitSeconds / 16 + 10, TimeUnit.SECONDS)
+                .callTimeout(0, TimeUnit.SECONDS)
+                .build();
+        try (Response response = executeRequest(request, longPoll); ResponseBody body = response.body()) {
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Request was not successful! Code: " + response.code() + ", URL: " + request.url());
+            }
+            String header = response.header("X-Nomad-Index");
+            long nextIndex = header != null ? Long.parseLong(header) : 0;
+            List<JobInfo> jobs = new ArrayList<>();
+            readJobs(body.charStream(), job -> true, jobs::add);
+            return new JobList(nextIndex, jobs.toArray(new JobInfo[0]));
+        } catch (NumberFormatException | JsonParseException e) {
+            throw new IOException("Invalid job list: " + e.getMessage(), e);
+        }
     }
 
     /**
-     * Converts a given job template to the Nomad REST API compliant job format.
+     * Creates a call to the Nomad event stream which receives the Job, Allocation and Evaluation events of all namespaces. The call is
+     * not executed yet so that it can be canceled by the caller. Note: It is up the callee to close the {@link Response}.
+     * @param index Index of the first event to receive (0 to start with the latest events)
+     * @return call (not null)
+     * @see <a href="https://developer.hashicorp.com/nomad/api-docs/events">Events HTTP API</a>
+     */
+    Call eventStream(long index) {
+        Map<String,String> params = new HashMap<>();
+        params.put("namespace", "*");
+        if (index > 0)
+            params.put("index", Long.toString(index));
+
+        Request request = createRequestBuilder("/v1/event/stream", params)
+                .get()
+                .build();
+        HttpUrl.Builder url = request.url().newBuilder();
+        for (String topic : EVENT_TOPICS) {
+            url.addQueryParameter("topic", topic + ":*");
+        }
+
+        // the stream is kept open as long as possible, Nomad sends a heartbeat every 10 seconds
+        OkHttpClient streamClient = client().newBuilder()
+                .readTimeout(0, TimeUnit.SECONDS)
+                .callTimeout(0, TimeUnit.SECONDS)
+                .build();
+        return streamClient.newCall(request.newBuilder().url(url.build()).build());
+    }
+
+    /**
+     * Provides the compiled job template of a given {@link NomadWorkerTemplate} (see {@link #normalizeJobTemplate(String)}).
+     * @param template Template used to create a new Job in Nomad
+     * @return compiled job template (not null)
+     */
+    public NomadJobTemplate getJobTemplate(NomadWorkerTemplate template) {
+        return normalizeJobTemplate(template.getJobTemplate());
+    }
+
+    /**
+     * Converts a given job template to the Nomad REST API compliant job format and compiles it. The result is cached by the content hash of
+     * the given job template, so that a HCL template is sent to Nomad and split at its placeholders only once. The cache is cleared when
+     * the Nomad URL changes.
      * @param jobTemplate Nomad-Job (HCL or JSON)
      * @return the given job template (converted to JSON if necessary)
      */
-    private String normalizeJobTemplate(String jobTemplate) {
-        if (!isJSON(jobTemplate)) {
-            Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private NomadJobTemplate normalizeJobTemplate(String jobTemplate) {
+        String key = Util.getDigestOf(jobTemplate);
+        synchronized (normalizedJobTemplates) {
+            String nomadUrl = cloud.getNomadUrl();
+            if (!Objects.equals(nomadUrl, normalizedJobTemplatesUrl)) {
+                normalizedJobTemplates.clear();
+                normalizedJobTemplatesUrl = nomadUrl;
+            }
+            NomadJobTemplate normalizedJobTemplate = normalizedJobTemplates.get(key);
+            if (normalizedJobTemplate != null) {
+                return normalizedJobTemplate;
+            }
+        }
 
-            JsonObject jobHCL = new JsonObject();
-            jobHCL.addProperty("JobHCL", jobTemplate);
+        String json = isJSON(jobTemplate) ? jobTemplate : parseJobTemplate(jobTemplate);
+        if (json == null) {
+            return new NomadJobTemplate(jobTemplate);
+        }
+        NomadJobTemplate normalizedJobTemplate = new NomadJobTemplate(json);
+        synchronized (normalizedJobTemplates) {
+            normalizedJobTemplates.put(key, normalizedJobTemplate);
+        }
+        return normalizedJobTemplate;
+    }
 
-            Request request = createRequestBuilder("/v1/jobs/parse", null)
-                    .post(RequestBody.create(gson.toJson(jobHCL), JSON))
-                    .build();
+    /**
+     * Converts a given HCL job template to JSON by using the /v1/jobs/parse REST API.
+     * @param jobTemplate Nomad-Job (HCL)
+     * @return the job template in JSON format or null if the conversion failed
+     */
+    private String parseJobTemplate(String jobTemplate) {
+        JsonObject jobHCL = new JsonObject();
+        jobHCL.addProperty("JobHCL", jobTemplate);
 
-            try (Response response = executeRequest(request)) {
-                ResponseBody body = response.body();
-                if (body != null) {
-                    JsonObject jobJson = new JsonObject();
-                    jobJson.add("Job", gson.fromJson(body.string(), JsonObject.class));
-                    body.close();
-                    return gson.toJson(jobJson);
-                }
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Converting job from HCL to JSON failed!", e);
+        Request request = createRequestBuilder("/v1/jobs/parse", null)
+                .post(RequestBody.create(GSON.toJson(jobHCL), JSON))
+                .build();
+
+        try (Response response = executeWithRetry(NomadRetryPolicy.Operation.PARSE, request, null)) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful()) {
+                LOGGER.log(Level.SEVERE, "Converting job from HCL to JSON failed! Code: " + response.code());
+            } else if (body != null) {
+                JsonObject jobJson = new JsonObject();
+                jobJson.add("Job", GSON.fromJson(body.string(), JsonObject.class));
+                body.close();
+                return GSON.toJson(jobJson);
             }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Converting job from HCL to JSON failed!", e);
         }
-
-        return jobTemplate;
+        return null;
     }
 
     /**
@@ -242,30 +758,112 @@ public final class NomadApi {
     }
 
     /**
-     * Executes a given request and returns the response body. It logs when it was not successful but there is no further indication
-     * for the callee whether this was successful or not.
-     * @param request Any request (not null)
-     * @return Response body as String or an empty String. (not null)
-     * @deprecated use {@link #executeRequest(Request)}
+     * Provides the namespace and region parameters of a job.
      */
-    private String checkResponseAndGetBody (Request request) {
-        String bodyString = "";
-        try (Response response = executeRequest(request);
-             ResponseBody body = response.body()
-        ) {
-            if (body != null) {
-                bodyString = body.string();
-            }
+    private static Map<String,String> jobParams(String namespace, String region) {
+        Map<String,String> params = new HashMap<>();
+        if (namespace != null)
+            params.put("namespace", namespace);
+        if (region != null && !region.equals("global"))
+            params.put("region", region);
+        return params;
+    }
 
-            if (!response.isSuccessful()) {
-                LOGGER.log(Level.SEVERE, "Request was not successful! Code: "+response.code()+", Body: '"+bodyString+"'"+"URL: "+request.url());
-            }
+    /**
+     * Encodes a given job ID so that it can be used as a single path segment. Dispatched jobs contain a slash in their ID
+     * (e.g. jenkins-parameterized-1a2b3c4d/dispatch-1234-abcd).
+     */
+    private static String encodeJobID(String jobID) {
+        return jobID.replace("/", "%2F");
+    }
+
+    /**
+     * Checks whether a job exists.
+     * @return true if the job exists, false if it does not exist or if it is unknown
+     */
+    private boolean jobExists(String jobID, String namespace, String region) {
+        Request request = createRequestBuilder("/v1/job/" + encodeJobID(jobID), jobParams(namespace, region))
+                .get()
+                .build();
+        try (Response response = executeRequest(request)) {
+            return response.isSuccessful();
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, e.getMessage() + "\nRequest:\n" + request);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the body of a given response.
+     * @return body of the response (empty if there is no body)
+     * @throws IOException if the response is not successful
+     */
+    private static String checkSuccessful(Response response, Request request) throws IOException {
+        ResponseBody body = response.body();
+        String bodyString = body != null ? body.string() : "";
+        if (!response.isSuccessful()) {
+            throw new IOException("Request was not successful! Code: " + response.code() + ", Body: '" + bodyString + "' URL: "
+                    + request.url());
         }
         return bodyString;
     }
 
+    /**
+     * Executes a given request and retries it according to the {@link NomadRetryPolicy} when it fails with a transport or server error.
+     * Note: It is up the callee to close the {@link Response}.
+     * @param operation Kind of the request
+     * @param request Request to execute (must be repeatable)
+     * @param applied Checked before every retry, returns true if a failed attempt took effect anyway (may be null)
+     * @return the last response or a synthetic empty 200 response if a failed attempt took effect anyway
+     * @throws IOException if the last attempt failed with a transport error
+     */
+    private Response executeWithRetry(NomadRetryPolicy.Operation operation, Request request, Callable<Boolean> applied)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Response response = executeRequest(request);
+                if (NomadCircuitBreaker.classify(response.code()) != NomadCircuitBreaker.Outcome.SERVER_ERROR) {
+                    retryPolicy.recordSuccess();
+                    return response;
+                }
+                if (!retryPolicy.shouldRetry(operation, attempt)) {
+                    return response;
+                }
+                LOGGER.log(Level.FINE, operation + " request failed (code " + response.code() + "), retrying: " + request.url());
+                metrics.recordRetry(request);
+                response.close();
+            } catch (NomadCircuitBreaker.OpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!retryPolicy.shouldRetry(operation, attempt)) {
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, operation + " request failed (" + e.getMessage() + "), retrying: " + request.url());
+                metrics.recordRetry(request);
+            }
+
+            try {
+                Thread.sleep(NomadRetryPolicy.delay(operation, attempt));
+                if (applied != null && Boolean.TRUE.equals(applied.call())) {
+                    LOGGER.log(Level.FINE, operation + " request took effect anyway: " + request.url());
+                    return new Response.Builder()
+                            .request(request)
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create("", JSON))
+                            .build();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the next attempt: " + request.url());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
     /**
      * Executes a given request, returns the response and takes care of the underlying client. Note: It is up the callee to close the
      * {@link Response}.
@@ -275,25 +873,187 @@ public final class NomadApi {
      * @see Call#execute()
      */
     private Response executeRequest(Request request) throws IOException {
-        try {
-            Response response = client().newCall(request).execute();
-            if (!response.isSuccessful() && Arrays.asList(401, 403, 500).contains(response.code())) {
-                resetClient();
+        return executeRequest(request, UnaryOperator.identity());
+    }
+
+    /**
+     * Same as {@link #executeRequest(Request)} but the client may be adjusted for a single request (e.g. longer timeouts of a blocking
+     * query). Routing, failover, circuit breaker and metrics apply in any case.
+     */
+    private Response executeRequest(Request request, UnaryOperator<OkHttpClient> adjust) throws IOException {
+        reloadTLSIfChanged(false);
+        NomadEndpoints endpoints = endpoints();
+        checkHealthIfDue(endpoints);
+
+        // requests which are pinned to a server are neither routed nor failed over
+        boolean pinned = request.tag(NomadEndpoints.Endpoint.class) != null;
+        boolean read = "GET".equals(request.method());
+        Request target = pinned ? request : route(endpoints, request, read);
+        for (int attempt = 1; ; attempt++) {
+            NomadCircuitBreaker breaker = endpoints.breakerOf(target.url());
+            if (!breaker.allowRequest()) {
+                throw new NomadCircuitBreaker.OpenException("Nomad is not available (circuit breaker is open), request was not sent: "
+                        + target.url());
             }
-            return response;
-        } catch (IOException e) {
+            NomadCircuitBreaker.Outcome outcome = NomadCircuitBreaker.Outcome.TRANSPORT_ERROR;
+            // blocking queries mostly wait on the server, so they do not count against the request limit
+            NomadEndpoints.Endpoint limited = target.url().queryParameter("wait") == null ? endpoints.of(target.url()) : null;
+            try {
+                if (limited != null) {
+                    limited.acquire();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free request slot: " + request.url());
+            }
+            try {
+                Response response = adjust.apply(client()).newCall(target).execute();
+                outcome = NomadCircuitBreaker.classify(response.code());
+                return response;
+            } catch (SSLException e) {
+                // a failed handshake may be caused by renewed certificates
+                reloadTLSIfChanged(true);
+                throw e;
+            } catch (IOException e) {
+                // reads can be sent to another server in any case, writes only if they did not reach the server
+                NomadEndpoints.Endpoint failed = endpoints.of(target.url());
+                if (pinned || failed == null || attempt >= endpoints.getEndpoints().size() || !(read || isConnectFailure(e))) {
+                    throw e;
+                }
+                endpoints.markFailed(failed);
+                LOGGER.log(Level.WARNING, "Nomad server " + failed.getUrl() + " failed (" + e.getMessage() + "), failing over");
+                target = route(endpoints, request, read);
+            } finally {
+                if (limited != null) {
+                    limited.release();
+                }
+                breaker.record(outcome);
+            }
+        }
+    }
+
+    /**
+     * Sends reads to any healthy server (with stale=true if {@link NomadCloud#isStaleReads()} is set) and writes to the leader.
+     */
+    private Request route(NomadEndpoints endpoints, Request request, boolean read) {
+        NomadEndpoints.Endpoint endpoint = read ? endpoints.forRead() : endpoints.forWrite();
+        HttpUrl url = endpoints.moveTo(request.url(), endpoint);
+        if (read && cloud.isStaleReads() && url.queryParameter("stale") == null) {
+            url = url.newBuilder().addQueryParameter("stale", "true").build();
+        }
+        return url.equals(request.url()) ? request : request.newBuilder().url(url).build();
+    }
+
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException;
+    }
+
+    /**
+     * @return the Nomad servers of the cloud (recreated when the configuration changes)
+     */
+    private NomadEndpoints endpoints() {
+        NomadEndpoints current = endpoints;
+        if (current == null || !Objects.equals(current.getNomadUrl(), cloud.getNomadUrl())
+                || current.getMaxRequestsPerHost() != cloud.getMaxRequestsPerHost()) {
+            current = new NomadEndpoints(cloud.getNomadUrl(), cloud.getMaxRequestsPerHost());
+            endpoints = current;
+        }
+        return current;
+    }
+
+    /**
+     * Checks the health of all servers in the background unless there is only one server or the last check is not long ago.
+     */
+    private void checkHealthIfDue(NomadEndpoints endpoints) {
+        long now = System.currentTimeMillis();
+        if (endpoints.getEndpoints().size() < 2 || now - healthCheckedAt < HEALTH_CHECK_INTERVAL
+                || !healthCheckRunning.compareAndSet(false, true)) {
+            return;
+        }
+        healthCheckedAt = now;
+        Timer.get().submit(() -> {
+            try {
+                for (NomadEndpoints.Endpoint endpoint : endpoints.getEndpoints()) {
+                    checkHealth(endpoints, endpoint);
+                }
+            } finally {
+                healthCheckRunning.set(false);
+            }
+        });
+    }
+
+    /**
+     * Checks whether a server responds and whether it is the leader (see stats.nomad.leader of /v1/agent/self).
+     */
+    private void checkHealth(NomadEndpoints endpoints, NomadEndpoints.Endpoint endpoint) {
+        Request.Builder builder = new Request.Builder().url(endpoint.getUrl() + "/v1/agent/self");
+        String nomadToken = cloud.getNomadACL();
+        if (StringUtils.isNotEmpty(nomadToken)) {
+            builder.addHeader("X-Nomad-Token", nomadToken);
+        }
+        OkHttpClient healthClient = client().newBuilder()
+                .connectTimeout(HEALTH_CHECK_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(HEALTH_CHECK_TIMEOUT, TimeUnit.MILLISECONDS)
+                .callTimeout(HEALTH_CHECK_TIMEOUT * 2, TimeUnit.MILLISECONDS)
+                .build();
+        try (Response response = healthClient.newCall(builder.build()).execute(); ResponseBody body = response.body()) {
+            boolean leader = false;
+            if (response.isSuccessful() && body != null) {
+                JsonObject self = GSON.fromJson(body.charStream(), JsonObject.class);
+                JsonObject stats = self != null && self.has("stats") ? self.getAsJsonObject("stats") : null;
+                JsonObject nomad = stats != null && stats.has("nomad") ? stats.getAsJsonObject("nomad") : null;
+                leader = nomad != null && nomad.has("leader") && "true".equals(nomad.get("leader").getAsString());
+            }
+            endpoints.update(endpoint, response.code() < 500, leader);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Health check of Nomad server " + endpoint.getUrl() + " failed: " + e.getMessage());
+            endpoints.update(endpoint, false, false);
+        }
+    }
+
+    /**
+     * Recreates the client when the client or server certificate was changed (e.g. renewed under the same path). The certificates are
+     * checked at most every {@link #TLS_CHECK_INTERVAL} milliseconds unless forced.
+     */
+    private void reloadTLSIfChanged(boolean force) {
+        if (!cloud.isTlsEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && now - tlsCheckedAt < TLS_CHECK_INTERVAL) {
+            return;
+        }
+        tlsCheckedAt = now;
+        String fingerprint = tlsFingerprint();
+        if (client != null && !fingerprint.equals(tlsFingerprint)) {
+            LOGGER.log(Level.INFO, "TLS certificates have changed");
             resetClient();
-            throw e;
         }
     }
 
+    /**
+     * @return modification time and size of the client and server certificate
+     */
+    private String tlsFingerprint() {
+        return fileFingerprint(cloud.getClientCertificate()) + "|" + fileFingerprint(cloud.getServerCertificate());
+    }
+
+    private static String fileFingerprint(String path) {
+        if (StringUtils.isEmpty(path)) {
+            return "";
+        }
+        File file = new File(path);
+        return file.lastModified() + ":" + file.length();
+    }
+
     /**
      * Provides a new request builder with a fresh Nomad token (if necessary).
      * @param path Relative path to a Nomad resource (e.g. /v1/agent/self)
      */
     private Request.Builder createRequestBuilder(String path, Map<String,String> params) {
         Request.Builder builder = new Request.Builder();
-        String nomadUrl = cloud.getNomadUrl();
+        NomadEndpoints.Endpoint endpoint = endpoints().forRead();
+        String nomadUrl = endpoint != null ? endpoint.getUrl() : null;
         if (nomadUrl == null || path == null)
             throw new RuntimeException("Unable to send request to Nomad as nomad url/path is empty");
         HttpUrl httpUrl = HttpUrl.parse(nomadUrl+path);
@@ -319,11 +1079,34 @@ public final class NomadApi {
      */
     private void resetClient() {
         // The fact that a certificate can expire, requires that the client can be recreated at runtime (Assumption: client certificate
-        // is renewed somehow but the path is still the same).
+        // is renewed somehow but the path is still the same). Therefore, the client is only recreated when the certificates change.
         client = null;
         LOGGER.log(Level.INFO, "Client has been reset!");
     }
 
+    /**
+     * @return request counts, latencies etc. of all calls of this instance
+     */
+    public NomadApiMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return number of connections of the connection pool which are currently in use
+     */
+    public int getActiveConnectionCount() {
+        OkHttpClient current = client;
+        return current != null ? current.connectionPool().connectionCount() - current.connectionPool().idleConnectionCount() : 0;
+    }
+
+    /**
+     * @return number of idle connections of the connection pool
+     */
+    public int getIdleConnectionCount() {
+        OkHttpClient current = client;
+        return current != null ? current.connectionPool().idleConnectionCount() : 0;
+    }
+
     /**
      * Provides an {@link OkHttpClient} instance. Create a new client or reuse the existing one. This method is thread-safe.
      * @return OkHttpClient instance (not null but TLS might not work)
@@ -333,8 +1116,18 @@ public final class NomadApi {
         if (client == null) {
             synchronized (this) {
                 if (client == null) {
-                    OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
+                    OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                            .eventListenerFactory(metrics.eventListenerFactory())
+                            .connectTimeout(cloud.getConnectTimeout(), TimeUnit.SECONDS)
+                            .readTimeout(cloud.getReadTimeout(), TimeUnit.SECONDS)
+                            .writeTimeout(cloud.getWriteTimeout(), TimeUnit.SECONDS)
+                            .callTimeout(cloud.getCallTimeout(), TimeUnit.SECONDS);
+                    if (cloud.getConnectionPoolSize() > 0 && cloud.getKeepAliveDuration() > 0) {
+                        clientBuilder.connectionPool(new ConnectionPool(cloud.getConnectionPoolSize(), cloud.getKeepAliveDuration(),
+                                TimeUnit.SECONDS));
+                    }
                     if (cloud.isTlsEnabled()) {
+                        tlsFingerprint = tlsFingerprint();
                         try {
                             OkHttpClientHelper.initTLS(clientBuilder,
                                     cloud.getClientCertificate(), Secret.toString(cloud.getClientPassword()),
@@ -351,4 +1144,28 @@ public final class NomadApi {
         return client;
     }
 
+    /**
+     * Result of {@link #watchJobs(String, long, long)}.
+     */
+    static final class JobList {
+        private final long index;
+        private final JobInfo[] jobs;
+
+        JobList(long index, JobInfo[] jobs) {
+            this.index = index;
+            this.jobs = jobs != null ? jobs : new JobInfo[0];
+        }
+
+        /**
+         * @return the X-Nomad-Index of the list (0 if Nomad did not provide one)
+         */
+        long getIndex() {
+            return index;
+        }
+
+        JobInfo[] getJobs() {
+            return jobs;
+        }
+    }
+
 }
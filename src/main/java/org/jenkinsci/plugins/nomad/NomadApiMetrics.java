@@ -0,0 +1,253 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.JsonObject;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Request counts, status codes, latencies, transferred bytes and retries of the Nomad API calls of a single {@link NomadApi}, broken
+ * down by endpoint. The numbers are collected by an OkHttp {@link EventListener}, so that every call is covered (including the event
+ * stream and blocking queries). The latency is the time until the response headers were received. It is not recorded for blocking
+ * queries and the event stream, which are counted under endpoints of their own: their latency is the wait time requested by the plugin
+ * and says nothing about how fast Nomad answers.
+ *
+ * @see NomadMetricsAction
+ */
+public final class NomadApiMetrics {
+
+    /**
+     * Nomad API endpoints which are used by this plugin.
+     */
+    public enum Endpoint {
+        AGENT_SELF("agent/self"),
+        JOBS("jobs"),
+        JOBS_WATCH("jobs/watch", false),
+        JOB("job"),
+        PLAN("plan"),
+        PARSE("parse"),
+        DISPATCH("dispatch"),
+        DELETE("delete"),
+        SCALE("scale"),
+        EVENT_STREAM("event/stream", false),
+        OTHER("other");
+
+        private final String displayName;
+        private final boolean timed;
+
+        Endpoint(String displayName) {
+            this(displayName, true);
+        }
+
+        Endpoint(String displayName, boolean timed) {
+            this.displayName = displayName;
+            this.timed = timed;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * @return false if the server holds the calls of this endpoint on purpose, so that their latency is not recorded
+         */
+        public boolean isTimed() {
+            return timed;
+        }
+
+        /**
+         * @return the endpoint of a given request
+         */
+        static Endpoint of(Request request) {
+            String path = request.url().encodedPath();
+            if (path.endsWith("/v1/agent/self")) {
+                return AGENT_SELF;
+            } else if (path.endsWith("/v1/jobs/parse")) {
+                return PARSE;
+            } else if (path.endsWith("/v1/jobs")) {
+                boolean blocking = request.url().queryParameter("index") != null || request.url().queryParameter("wait") != null;
+                return blocking ? JOBS_WATCH : JOBS;
+            } else if (path.contains("/v1/event/stream")) {
+                return EVENT_STREAM;
+            } else if (path.contains("/v1/job/")) {
+                if (path.endsWith("/plan")) {
+                    return PLAN;
+                } else if (path.endsWith("/dispatch")) {
+                    return DISPATCH;
+                } else if (path.endsWith("/scale")) {
+                    return SCALE;
+                } else if ("DELETE".equals(request.method())) {
+                    return DELETE;
+                }
+                return JOB;
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * Metrics of a single endpoint.
+     */
+    public static final class EndpointMetrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        private final NomadLatencyHistogram latency = new NomadLatencyHistogram();
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * @return number of calls which failed without a response (e.g. connection refused or timeout)
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        /**
+         * @return number of responses of the given status code
+         */
+        public long getStatusCount(int code) {
+            LongAdder count = statusCodes.get(code);
+            return count != null ? count.sum() : 0;
+        }
+
+        /**
+         * @return number of responses which are no client or server error
+         */
+        public long getSuccesses() {
+            long successes = 0;
+            for (Map.Entry<Integer, LongAdder> entry : statusCodes.entrySet()) {
+                if (entry.getKey() < 400) {
+                    successes += entry.getValue().sum();
+                }
+            }
+            return successes;
+        }
+
+        public NomadLatencyHistogram getLatency() {
+            return latency;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("requests", getRequests());
+            json.addProperty("failures", getFailures());
+            json.addProperty("retries", getRetries());
+            json.addProperty("bytesSent", getBytesSent());
+            json.addProperty("bytesReceived", getBytesReceived());
+            JsonObject codes = new JsonObject();
+            statusCodes.forEach((code, count) -> codes.addProperty(String.valueOf(code), count.sum()));
+            json.add("statusCodes", codes);
+            json.add("latency", latency.toJson());
+            return json;
+        }
+    }
+
+    private final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<>(Endpoint.class);
+
+    NomadApiMetrics() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpoints.put(endpoint, new EndpointMetrics());
+        }
+    }
+
+    public EndpointMetrics get(Endpoint endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * Records that a given request is sent again.
+     */
+    void recordRetry(Request request) {
+        get(Endpoint.of(request)).retries.increment();
+    }
+
+    /**
+     * @return an event listener factory which records the metrics of every call
+     */
+    EventListener.Factory eventListenerFactory() {
+        return call -> {
+            Endpoint endpoint = Endpoint.of(call.request());
+            return new Listener(get(endpoint), endpoint.isTimed());
+        };
+    }
+
+    /**
+     * @return the metrics of all endpoints in JSON format
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        endpoints.forEach((endpoint, metrics) -> json.add(endpoint.getDisplayName(), metrics.toJson()));
+        return json;
+    }
+
+    /**
+     * Records the metrics of a single call.
+     */
+    private static final class Listener extends EventListener {
+        private final EndpointMetrics metrics;
+        private final boolean timed;
+        private long start;
+
+        private Listener(EndpointMetrics metrics, boolean timed) {
+            this.metrics = metrics;
+            this.timed = timed;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            start = System.nanoTime();
+            metrics.requests.increment();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            metrics.bytesSent.add(byteCount);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            if (timed) {
+                metrics.latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            metrics.statusCodes.computeIfAbsent(response.code(), code -> new LongAdder()).increment();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            metrics.bytesReceived.add(byteCount);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            metrics.failures.increment();
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+/**
+ * Refreshes the cluster capacity of every {@link NomadCloud} which has {@link NomadCloud#isCapacityCheck()} set (see
+ * {@link NomadClusterCapacity}).
+ */
+@Extension
+public class NomadCapacityMonitor extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadCapacityMonitor.class.getName());
+
+    public NomadCapacityMonitor() {
+        super("Nomad capacity monitor");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(30);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof NomadCloud && ((NomadCloud) cloud).isCapacityCheck()) {
+                try {
+                    ((NomadCloud) cloud).refreshCapacity();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Refreshing the capacity of cloud " + cloud.name + " failed", e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Protects Nomad from further requests while it keeps failing. Responses are classified first: only server errors and transport errors
+ * count as failures, client errors (e.g. 401, 403 or 404) say nothing about the health of Nomad. After a number of consecutive failures the
+ * breaker opens and rejects all requests for a while. Afterwards a single trial request is let through, which either closes the breaker
+ * again or keeps it open for another period.
+ */
+final class NomadCircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadCircuitBreaker.class.getName());
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_DURATION = 10000;
+
+    /**
+     * Classification of a single response.
+     */
+    enum Outcome {
+        /** 2xx and 3xx */
+        SUCCESS,
+        /** 4xx, the request was wrong but Nomad is healthy */
+        CLIENT_ERROR,
+        /** 5xx (except 501) or 429 */
+        SERVER_ERROR,
+        /** connection refused, reset, timeout, ... */
+        TRANSPORT_ERROR;
+
+        boolean isFailure() {
+            return this == SERVER_ERROR || this == TRANSPORT_ERROR;
+        }
+    }
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Thrown instead of sending a request while the breaker is open.
+     */
+    static final class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDuration;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    NomadCircuitBreaker(String name) {
+        this(name, FAILURE_THRESHOLD, OPEN_DURATION);
+    }
+
+    NomadCircuitBreaker(String name, int failureThreshold, long openDuration) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * @return the classification of a given HTTP status code
+     */
+    static Outcome classify(int code) {
+        if (code < 400) {
+            return Outcome.SUCCESS;
+        }
+        if (code == 429 || (code >= 500 && code != 501)) {
+            return Outcome.SERVER_ERROR;
+        }
+        return Outcome.CLIENT_ERROR;
+    }
+
+    /**
+     * @return true if a request may be sent, false if the breaker is open
+     */
+    synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * @return true if a request would be allowed right now (unlike {@link #allowRequest()} this does not start a trial request)
+     */
+    synchronized boolean isAvailable() {
+        return state == State.CLOSED || (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDuration);
+    }
+
+    /**
+     * Records the outcome of a request which was allowed by {@link #allowRequest()}.
+     */
+    synchronized void record(Outcome outcome) {
+        if (!outcome.isFailure()) {
+            if (state != State.CLOSED) {
+                LOGGER.log(Level.INFO, "Nomad " + name + " is available again, closing circuit breaker");
+            }
+            state = State.CLOSED;
+            failures = 0;
+            return;
+        }
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                LOGGER.log(Level.WARNING, "Nomad " + name + " failed " + failures + " times in a row, opening circuit breaker for "
+                        + openDuration + " ms");
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+}
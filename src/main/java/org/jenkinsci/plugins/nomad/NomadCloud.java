@@ -6,52 +6,88 @@ import static com.cloudbees.plugins.credentials.CredentialsMatchers.filter;
 import static com.cloudbees.plugins.credentials.CredentialsMatchers.withId;
 import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jenkinsci.plugins.nomad.Api.JobInfo;
-import org.jenkinsci.plugins.nomad.Api.JobSummary;
+import org.jenkinsci.plugins.nomad.NomadLaunchTimeline.Milestone;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
-import org.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.verb.POST;
 
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.google.common.base.Strings;
 
 import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
 import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.labels.LabelAtom;
+import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
 import hudson.slaves.AbstractCloudImpl;
 import hudson.slaves.Cloud;
+import hudson.slaves.ComputerListener;
 import hudson.slaves.NodeProvisioner;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.NamingThreadFactory;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import jenkins.slaves.JnlpAgentReceiver;
+import jenkins.util.Timer;
 
 public class NomadCloud extends AbstractCloudImpl {
 
     private static final Logger LOGGER = Logger.getLogger(NomadCloud.class.getName());
+    private static final int MAX_TEMPLATE_CACHE_SIZE = 1024;
+    private static final long ACL_TOKEN_TTL = TimeUnit.MINUTES.toMillis(1);
+    private static final AtomicLong CREDENTIALS_GENERATION = new AtomicLong();
+    /**
+     * The cloud instance which started a launch in flight by worker name. A reconfigured cloud is a new instance with an empty
+     * {@link NomadLaunchRegistry}, so launches are always completed by the instance which started them.
+     */
+    private static final Map<String, NomadCloud> LAUNCHING = new ConcurrentHashMap<>();
+    private static final int DEFAULT_PRUNE_INTERVAL = 5;
+    private static final int DEFAULT_PRUNE_MAX_API_CALLS = 100;
+    private static final int DEFAULT_CONNECTION_POOL_SIZE = 5;
+    private static final int DEFAULT_KEEP_ALIVE_DURATION = 300;
+    private static final int DEFAULT_TIMEOUT = 10;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+    private static final int DEFAULT_PREDICTIVE_HEADROOM = 5;
+    private static final long DEFAULT_STARTUP_TIME = 60000;
+    private static final int DEFAULT_REGISTRATION_RATE = 10;
+    private static final int DEFAULT_MAX_REGISTRATIONS = 10;
 
     // persistent fields
     private final String nomadUrl;
@@ -64,10 +100,39 @@ public class NomadCloud extends AbstractCloudImpl {
     private final Secret serverPassword;
     private final int workerTimeout;
     private final List<NomadWorkerTemplate> templates;
+    private Boolean eventStream;
+    private int pruneInterval;
+    private int pruneMaxApiCalls;
+    private int connectionPoolSize;
+    private int keepAliveDuration;
+    private int connectTimeout;
+    private int readTimeout;
+    private int writeTimeout;
+    private int callTimeout;
+    private int maxRequestsPerHost;
+    private boolean staleReads;
+    private int maxInstances;
+    private boolean predictiveProvisioning;
+    private int predictiveHeadroom;
+    private boolean capacityCheck;
+    private int registrationRate;
+    private int maxRegistrations;
 
     // non persistent fields
     private transient NomadApi nomad;
-    private transient int pending = 0;
+    private transient NomadEventStream events;
+    private transient NomadTerminator terminator;
+    private transient NomadJobWatcher jobs;
+    private transient NomadLaunchStats launchStats;
+    private transient NomadLaunchRegistry launches;
+    private transient NomadAdmissionController admission;
+    private transient NomadDemandForecaster forecaster;
+    private transient NomadClusterCapacity capacity;
+    private transient volatile NomadLaunchPipeline pipeline;
+    private transient Map<String, Set<String>> taskGroups;
+    private transient List<Set<LabelAtom>> templateLabels;
+    private transient Map<String, Optional<NomadWorkerTemplate>> templateCache;
+    private transient volatile CachedToken nomadACL;
 
     // legacy fields (we have to keep them for backward compatibility)
     private transient String jenkinsUrl;
@@ -120,6 +185,23 @@ public class NomadCloud extends AbstractCloudImpl {
 
     private Object readResolve() {
         nomad = new NomadApi(this);
+        events = new NomadEventStream(this);
+        terminator = new NomadTerminator(this);
+        jobs = new NomadJobWatcher(this);
+        launchStats = new NomadLaunchStats();
+        launches = new NomadLaunchRegistry();
+        admission = new NomadAdmissionController();
+        forecaster = new NomadDemandForecaster();
+        capacity = new NomadClusterCapacity();
+        taskGroups = new ConcurrentHashMap<>();
+        templateLabels = new ArrayList<>();
+        templates.forEach(template -> templateLabels.add(Label.parse(template.getLabels())));
+        templateCache = Collections.synchronizedMap(new LinkedHashMap<String, Optional<NomadWorkerTemplate>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Optional<NomadWorkerTemplate>> eldest) {
+                return size() > MAX_TEMPLATE_CACHE_SIZE;
+            }
+        });
         MigrationHelper.migrate(this);
         return this;
     }
@@ -131,21 +213,56 @@ public class NomadCloud extends AbstractCloudImpl {
         final NomadWorkerTemplate template = getTemplate(label);
 
         if (template != null) {
-            if (prune)
-                pruneOrphanedWorkers(template);
+            if (isEventStream())
+                events.start();
 
             try {
+                int wanted = (excessWorkload + template.getNumExecutors() - 1) / template.getNumExecutors();
+                int admitted = admission.admit(template, wanted, getFreeInstances(), this::getFreeInstances);
+                NomadClusterCapacity.Grant grant = null;
+                if (capacityCheck) {
+                    grant = capacity.acquire(template, admitted);
+                    int placeable = grant.getCount();
+                    if (placeable < admitted) {
+                        LOGGER.log(Level.INFO, "Nomad cluster of cloud " + name + " can only place " + placeable + " of " + admitted
+                                + " requested workers of template " + template.getPrefix() + ", the rest stays in the queue");
+                    }
+                    admitted = placeable;
+                }
+                if (admitted < wanted) {
+                    LOGGER.log(Level.INFO, "Instance limit of cloud " + name + " or template " + template.getPrefix() + " reached, launching "
+                            + admitted + " of " + wanted + " requested workers");
+                }
+                excessWorkload = Math.min(excessWorkload, admitted * template.getNumExecutors());
+                List<Long> queued = getQueueEntryTimes(label);
+                boolean bulk = template.getBulkSize() > 1 && !template.isDispatch();
+                List<NomadLaunch> batch = new ArrayList<>();
                 while (excessWorkload > 0) {
                     LOGGER.log(Level.INFO, "Excess workload of " + excessWorkload + ", provisioning new Jenkins worker on Nomad cluster");
 
-                    final String workerName = template.createWorkerName();
+                    final NomadLaunch launch = new NomadLaunch(template.createWorkerName(), template, true);
+                    launch.setCapacity(grant);
+                    if (!queued.isEmpty()) {
+                        launch.getTimeline().mark(Milestone.QUEUED, queued.get(Math.min(nodes.size(), queued.size() - 1)));
+                    }
+                    addLaunch(launch);
+                    if (bulk) {
+                        batch.add(launch);
+                        if (batch.size() >= template.getBulkSize()) {
+                            pipeline().submit(batch);
+                            batch = new ArrayList<>();
+                        }
+                    } else {
+                        pipeline().submit(Collections.singletonList(launch));
+                    }
                     nodes.add(new NodeProvisioner.PlannedNode(
-                            workerName,
-                            NomadComputer.threadPoolForRemoting.submit(
-                                    new ProvisioningCallback(workerName, template, this)
-                            ), template.getNumExecutors()));
+                            launch.getWorkerName(),
+                            launch.getFuture(),
+                            template.getNumExecutors()));
                     excessWorkload -= template.getNumExecutors();
-                    pending += template.getNumExecutors();
+                }
+                if (!batch.isEmpty()) {
+                    pipeline().submit(batch);
                 }
                 return nodes;
             } catch (Exception e) {
@@ -156,47 +273,505 @@ public class NomadCloud extends AbstractCloudImpl {
         return Collections.emptyList();
     }
 
+    /**
+     * Registrations wait for Nomad and sleep between their retries, so they get threads of their own instead of the remoting pool. One
+     * thread per registration in flight plus one for the drain task is enough, idle threads are released after a minute.
+     */
+    private ThreadPoolExecutor createLaunchExecutor() {
+        int threads = getMaxRegistrations() + 1;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Nomad launch pipeline [" + name + "]"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the pipeline which launches the workers of this cloud (created on first use, so that it picks up the configured limits)
+     */
+    NomadLaunchPipeline pipeline() {
+        NomadLaunchPipeline current = pipeline;
+        if (current == null) {
+            synchronized (this) {
+                current = pipeline;
+                if (current == null) {
+                    current = new NomadLaunchPipeline(new NomadLaunchPipeline.Stages() {
+                        @Override
+                        public List<List<NomadLaunch>> addWorkers(List<List<NomadLaunch>> batches) {
+                            return NomadCloud.this.addWorkers(batches);
+                        }
+
+                        @Override
+                        public void startWorkers(List<NomadLaunch> batch) {
+                            NomadCloud.this.startWorkers(batch);
+                        }
+
+                        @Override
+                        public void failWorkers(List<NomadLaunch> batch, String message) {
+                            NomadCloud.this.failWorkers(batch, message);
+                        }
+                    }, createLaunchExecutor(), getRegistrationRate(), getMaxRegistrations());
+                    pipeline = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Removes the task group of a terminated worker from its bulk job (see {@link NomadWorkerTemplate#getBulkSize()}). The task groups
+     * which are left are tracked per job and updated atomically, so that of several workers which are terminated at the same time exactly
+     * one sees that it was the last one.
+     * @return true if no task group of the job is left, i.e. the whole job has to be stopped
+     */
+    boolean removeTaskGroup(String jobId, String taskGroup) {
+        boolean[] last = new boolean[1];
+        taskGroups.compute(jobId, (id, groups) -> {
+            Set<String> remaining = groups != null ? groups : getTaskGroups(id);
+            remaining.remove(taskGroup);
+            last[0] = remaining.isEmpty();
+            return last[0] ? null : remaining;
+        });
+        return last[0];
+    }
+
+    /**
+     * @return the task groups of all workers of this cloud which run within the given job (after a restart or a reconfiguration of the
+     * cloud, when the task groups are not tracked yet)
+     */
+    private Set<String> getTaskGroups(String jobId) {
+        Set<String> groups = ConcurrentHashMap.newKeySet();
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof NomadWorker && name.equals(((NomadWorker) node).getCloudName())
+                    && jobId.equals(((NomadWorker) node).getJobId()) && ((NomadWorker) node).getTaskGroup() != null) {
+                groups.add(((NomadWorker) node).getTaskGroup());
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * @return the times the buildable items of a given label entered the queue (oldest first)
+     */
+    private static List<Long> getQueueEntryTimes(Label label) {
+        List<Long> times = new ArrayList<>();
+        for (Queue.BuildableItem item : Queue.getInstance().getBuildableItems()) {
+            if (Objects.equals(item.getAssignedLabel(), label)) {
+                times.add(item.buildableStartMilliseconds);
+            }
+        }
+        Collections.sort(times);
+        return times;
+    }
+
+
+    /**
+     * Tops up the warm pool of every template, so that at least {@link NomadWorkerTemplate#getMinIdle()} workers are connected and unused
+     * (or on their way).
+     *
+     * @see NomadWarmPoolMaintainer
+     */
+    void maintainWarmPool() {
+        for (NomadWorkerTemplate template : templates) {
+            if (template.getMinIdle() <= 0) {
+                continue;
+            }
+            int missing = template.getMinIdle() - countIdleWorkers(template) - launches.getWarmLaunches(template);
+            missing = Math.min(missing, Math.min(getFreeInstances(), getFreeInstances(template)));
+            NomadClusterCapacity.Grant grant = null;
+            if (capacityCheck && missing > 0) {
+                grant = capacity.acquire(template, missing);
+                missing = grant.getCount();
+            }
+            if (missing > 0 && isEventStream()) {
+                events.start();
+            }
+            for (int i = 0; i < missing; i++) {
+                LOGGER.log(Level.INFO, "Warm pool of template " + template.getPrefix() + " is short of " + (missing - i)
+                        + " workers, provisioning new Jenkins worker on Nomad cluster");
+                final NomadLaunch launch = new NomadLaunch(template.createWorkerName(), template, false);
+                launch.setCapacity(grant);
+                addLaunch(launch);
+                pipeline().submit(Collections.singletonList(launch));
+            }
+        }
+    }
+
+    /**
+     * @return number of workers which may still be launched by this cloud ({@link Integer#MAX_VALUE} if there is no limit)
+     */
+    int getFreeInstances() {
+        return maxInstances > 0 ? Math.max(0, maxInstances - countInstances(null)) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return number of workers which may still be launched by a given template ({@link Integer#MAX_VALUE} if there is no limit)
+     */
+    int getFreeInstances(NomadWorkerTemplate template) {
+        int max = template.getMaxInstances();
+        return max > 0 ? Math.max(0, max - countInstances(template)) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param template the template or null for all workers of this cloud
+     * @return number of workers which are connected or on their way
+     */
+    private int countInstances(NomadWorkerTemplate template) {
+        int count = 0;
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof NomadWorker && name.equals(((NomadWorker) node).getCloudName())
+                    && (template == null || template.isTemplateOf((NomadWorker) node)) && !launches.contains(node.getNodeName())) {
+                count++;
+            }
+        }
+        for (NomadLaunch launch : launches.getLaunches()) {
+            if (template == null || launch.getTemplate() == template) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of workers of a given template which are online, accept tasks and have nothing to do
+     */
+    int countIdleWorkers(NomadWorkerTemplate template) {
+        int idle = 0;
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof NomadWorker && name.equals(((NomadWorker) node).getCloudName()) && template.isTemplateOf((NomadWorker) node)) {
+                Computer computer = node.toComputer();
+                if (computer != null && computer.isOnline() && computer.isIdle() && computer.isAcceptingTasks()) {
+                    idle++;
+                }
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * Adds the workers of the given batches to Jenkins. The queue lock is taken once for all of them instead of once per worker. The
+     * workers of a batch with several launches share a single job and get a task group each (see {@link NomadWorkerTemplate#getBulkSize()}).
+     * @return the batches whose workers were added
+     */
+    private List<List<NomadLaunch>> addWorkers(List<List<NomadLaunch>> batches) {
+        List<List<NomadLaunch>> added = new ArrayList<>();
+        Map<List<NomadLaunch>, String> failed = new LinkedHashMap<>();
+        Queue.withLock(new Runnable() {
+            @Override
+            public void run() {
+                for (List<NomadLaunch> batch : batches) {
+                    NomadLaunch first = batch.get(0);
+                    String jobId = batch.size() > 1 ? first.getTemplate().createBulkJobId(first.getWorkerName()) : null;
+                    try {
+                        for (NomadLaunch launch : batch) {
+                            NomadWorker worker = createWorker(launch);
+                            if (jobId != null) {
+                                worker.setJobId(jobId);
+                                worker.setTaskGroup(launch.getWorkerName());
+                            }
+                            Jenkins.get().addNode(worker);
+                            if (jobId != null) {
+                                taskGroups.computeIfAbsent(jobId, id -> ConcurrentHashMap.newKeySet()).add(launch.getWorkerName());
+                            }
+                            launch.setState(NomadLaunch.State.REGISTERING);
+                        }
+                        added.add(batch);
+                    } catch (Exception e) {
+                        failed.put(batch, "Unable to start worker on Nomad cluster: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        failed.forEach(this::failWorkers);
+        return added;
+    }
+
+    /**
+     * Asks Nomad to start the workers of a given batch. The launch completes as soon as the agent comes online (see
+     * {@link LaunchListener}), when Nomad reports that the worker could not be started or when the worker timeout expires. No thread is
+     * blocked while waiting for the agent.
+     */
+    private void startWorkers(List<NomadLaunch> batch) {
+        NomadLaunch first = batch.get(0);
+        NomadWorkerTemplate template = first.getTemplate();
+        try {
+            if (batch.size() == 1) {
+                String workerName = first.getWorkerName();
+                String jnlpSecret = JnlpAgentReceiver.SLAVE_SECRET.mac(workerName);
+
+                LOGGER.log(Level.INFO, "Asking Nomad to schedule new Jenkins worker");
+
+                String jobId = nomad.startWorker(workerName, jnlpSecret, template);
+                if (!jobId.equals(workerName)) {
+                    first.getWorker().setJobId(jobId);
+                }
+                awaitConnection(first);
+                events.watchFailure(jobId).thenAccept(message -> failLaunch(first, "Nomad was not able to start the agent: " + message));
+            } else {
+                String jobId = first.getWorker().getJobId();
+                List<String> workerNames = new ArrayList<>();
+                List<String> jnlpSecrets = new ArrayList<>();
+                for (NomadLaunch launch : batch) {
+                    workerNames.add(launch.getWorkerName());
+                    jnlpSecrets.add(JnlpAgentReceiver.SLAVE_SECRET.mac(launch.getWorkerName()));
+                }
+
+                LOGGER.log(Level.INFO, "Asking Nomad to schedule " + batch.size() + " new Jenkins workers as job " + jobId);
+
+                nomad.startWorkers(jobId, workerNames, jnlpSecrets, template);
+                for (NomadLaunch launch : batch) {
+                    awaitConnection(launch);
+                }
+                events.watchFailure(jobId).thenAccept(message -> failWorkers(batch, "Nomad was not able to start the agents: " + message));
+            }
+        } catch (Exception e) {
+            failWorkers(batch, "Unable to start worker on Nomad cluster: " + e.getMessage());
+        }
+    }
+
+    private void failWorkers(List<NomadLaunch> batch, String message) {
+        for (NomadLaunch launch : batch) {
+            failLaunch(launch, message);
+        }
+    }
+
+    private NomadWorker createWorker(NomadLaunch launch) throws Descriptor.FormException, IOException {
+        NomadWorkerTemplate template = launch.getTemplate();
+        NomadWorker worker = new NomadWorker(
+                launch.getWorkerName(),
+                name,
+                template.getLabels(),
+                template.getNumExecutors(),
+                template.getIdleTerminationInMinutes(),
+                template.isReusable(),
+                template.getRemoteFs()
+        );
+        launch.setWorker(worker);
+        return worker;
+    }
+
+    /**
+     * Waits (without blocking) for the agent of a launch whose job was registered at Nomad.
+     */
+    private void awaitConnection(NomadLaunch launch) {
+        NomadWorker worker = launch.getWorker();
+        launch.getTimeline().mark(Milestone.REGISTERED);
+        launch.setState(NomadLaunch.State.STARTING);
+        NomadJobTemplate jobTemplate = nomad.getJobTemplate(launch.getTemplate());
+        worker.setNamespace(jobTemplate.getNamespace());
+        worker.setRegion(jobTemplate.getRegion());
+
+        LOGGER.log(Level.INFO, "Worker scheduled, waiting for connection");
+        launch.setTimeout(Timer.get().schedule(() -> {
+            // an agent which is online is never terminated, even if its launch was not completed in time
+            Computer online = worker.toComputer();
+            if (online != null && online.isOnline()) {
+                completeLaunch(launch.getWorkerName());
+            } else {
+                failLaunch(launch, "Timed out waiting for agent to start up. Timeout: " + workerTimeout + " minutes.");
+            }
+        }, workerTimeout, TimeUnit.MINUTES));
+
+        Computer computer = worker.toComputer();
+        if (computer != null && computer.isOnline()) {
+            completeLaunch(launch.getWorkerName());
+        }
+    }
+
+    private void addLaunch(NomadLaunch launch) {
+        LAUNCHING.put(launch.getWorkerName(), this);
+        launches.add(launch);
+    }
+
+    /**
+     * @return the cloud instance which started the launch of a given worker or null if the worker is not launched (anymore)
+     */
+    static NomadCloud launchingCloud(String workerName) {
+        return LAUNCHING.get(workerName);
+    }
+
+    /**
+     * Completes the launch of a given worker (if any) because the agent is connected now.
+     */
+    void completeLaunch(String workerName) {
+        NomadLaunch launch = launches.remove(workerName);
+        if (launch == null) {
+            return;
+        }
+        LAUNCHING.remove(workerName, this);
+        launch.setState(NomadLaunch.State.CONNECTED);
+        launch.cancelTimeout();
+        NomadWorker worker = launch.getWorker();
+        recordLaunch(launch, worker);
+        if (worker.getTaskGroup() == null) {
+            events.forget(worker.getJobId());
+        }
+        LOGGER.log(Level.INFO, "Connection established");
+        launch.getFuture().complete(worker);
+    }
+
+    /**
+     * Records the phases of a given launch up to the connection of the agent. The time of placement and start is taken from the event
+     * stream (if enabled). The first task is recorded by the {@link NomadComputer}.
+     */
+    private void recordLaunch(NomadLaunch launch, NomadWorker worker) {
+        NomadLaunchTimeline timeline = launch.getTimeline();
+        NomadEventStream.WorkerState state = events.getState(worker.getJobId());
+        if (state != null) {
+            timeline.mark(Milestone.PLACED, state.getPlacedTimestamp());
+            timeline.mark(Milestone.STARTED, state.getStartedTimestamp());
+        }
+        timeline.mark(Milestone.CONNECTED);
+        launchStats.record(launch.getTemplate().getPrefix(), timeline, Milestone.PROVISIONED, Milestone.CONNECTED);
+        worker.setLaunchTimeline(timeline);
+    }
+
+    /**
+     * Fails the launch of a given worker (unless it is completed already) and terminates the worker.
+     */
+    private void failLaunch(NomadLaunch launch, String message) {
+        if (!launches.remove(launch)) {
+            return;
+        }
+        LAUNCHING.remove(launch.getWorkerName(), this);
+        capacity.release(launch.getCapacity());
+        launch.setState(NomadLaunch.State.FAILED);
+        launch.cancelTimeout();
+        NomadWorker worker = launch.getWorker();
+        LOGGER.log(Level.SEVERE, message + " Terminating worker " + launch.getWorkerName());
+        if (worker != null) {
+            if (worker.getTaskGroup() == null) {
+                events.forget(worker.getJobId());
+            }
+            NomadComputer.threadPoolForRemoting.submit(() -> {
+                try {
+                    worker.terminate();
+                } catch (InterruptedException | IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to terminate worker " + worker.getNodeName(), e);
+                }
+            });
+        }
+        launch.getFuture().completeExceptionally(new IllegalStateException(message));
+    }
+
+    /**
+     * Plans every template again to find out how many workers the Nomad cluster can place right now.
+     *
+     * @see NomadCapacityMonitor
+     */
+    void refreshCapacity() {
+        capacity.refresh(nomad, templates);
+    }
 
     /**
      * Determines if some nomad worker needs to be stopped.
      * A nomad job can be stopped if there is no related jenkins agent running.
      * Make sure that we leave enough time for new worker to connect to Jenkins before removal.
+     * Region and submit time are taken from the job list. The job list is read from the {@link NomadJobWatcher} snapshot, only if there is
+     * no snapshot yet there is one request per template prefix. Additionally, there is one request per stopped job.
+     * The number of requests is limited by {@link #getPruneMaxApiCalls()}.
      *
-     * @param template - the {@link NomadWorkerTemplate} that was used to start workers.
+     * @see NomadOrphanPruner
      */
-    private void pruneOrphanedWorkers(NomadWorkerTemplate template) {
-        JobInfo[] nomadWorkers = this.nomad.getRunningWorkers(template.getPrefix());
+    void pruneOrphanedWorkers() {
+        int apiCalls = getPruneMaxApiCalls();
+        Set<String> knownJobs = getWorkerJobIds();
+        Set<String> prefixes = new LinkedHashSet<>();
+        templates.forEach(template -> prefixes.add(template.getPrefix()));
+        Instant now = Instant.now();
+
+        for (String prefix : prefixes) {
+            Collection<JobInfo> nomadWorkers = jobs.getJobs(prefix);
+            if (nomadWorkers == null) {
+                if (apiCalls-- <= 0) {
+                    LOGGER.log(Level.FINE, "Pruning of cloud " + name + " stopped, API call limit reached");
+                    return;
+                }
+                List<JobInfo> runningWorkers = new ArrayList<>();
+                this.nomad.forEachJob(prefix, NomadCloud::isRunningWorker, runningWorkers::add);
+                nomadWorkers = runningWorkers;
+            }
 
-        for (JobInfo worker : nomadWorkers) {
-            if (worker.getStatus().equalsIgnoreCase("running")) {
+            for (JobInfo worker : nomadWorkers) {
+                if (!isRunningWorker(worker)) {
+                    continue;
+                }
                 LOGGER.log(Level.FINE, "Found worker: " + worker.getName() + " - " + worker.getID());
-                Node node = Jenkins.get().getNode(worker.getName());
-
-                if (node == null) {
-                    JobSummary jobSummary = worker.getJobSummary();
-                    String jobNamespace = worker.getJobSummary().getNamespace();
-                    JSONObject job = this.nomad.getRunningWorker(jobSummary.getJobID(), jobNamespace);
-                    String jobRegion = job.getString("Region");
-                    Instant expiryTime = Instant.ofEpochMilli(job.getLong("SubmitTime"));
-                    expiryTime.plusSeconds(this.workerTimeout * 60);
-                    Instant now = Instant.now();
-                    if (now.isAfter(expiryTime)) {
-                        LOGGER.log(Level.FINE, "Found Orphaned Node: " + worker.getID() + " in namespace " + jobNamespace + " in region " + jobRegion);
-                        this.nomad.stopWorker(worker.getID(), jobNamespace, jobRegion);
+                if (Jenkins.get().getNode(worker.getName()) != null || knownJobs.contains(worker.getID())) {
+                    continue;
+                }
+                if (worker.getSubmitTime() == null) {
+                    LOGGER.log(Level.FINE, "Skipping worker " + worker.getID() + " without submit time");
+                    continue;
+                }
+
+                Instant expiryTime = Instant.ofEpochSecond(0, worker.getSubmitTime()).plusSeconds(this.workerTimeout * 60L);
+                if (now.isAfter(expiryTime)) {
+                    if (apiCalls-- <= 0) {
+                        LOGGER.log(Level.FINE, "Pruning of cloud " + name + " stopped, API call limit reached");
+                        return;
                     }
+                    // the job list only contains jobs of the region of the Nomad agent, so there is no need to pass the region
+                    String jobNamespace = worker.getNamespace();
+                    LOGGER.log(Level.FINE, "Found Orphaned Node: " + worker.getID() + " in namespace " + jobNamespace);
+                    this.nomad.stopWorker(worker.getID(), jobNamespace, null);
                 }
             }
         }
+    }
 
+    /**
+     * @return true if the given job is a running worker (i.e. not a parameterized parent job)
+     */
+    private static boolean isRunningWorker(JobInfo job) {
+        return "running".equalsIgnoreCase(job.getStatus()) && !job.isParameterizedJob();
+    }
+
+    /**
+     * @return IDs of the Nomad jobs of all {@link NomadWorker}s which belong to this cloud
+     */
+    private Set<String> getWorkerJobIds() {
+        Set<String> jobIds = new HashSet<>();
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof NomadWorker && name.equals(((NomadWorker) node).getCloudName())) {
+                jobIds.add(((NomadWorker) node).getJobId());
+            }
+        }
+        return jobIds;
+    }
+
+    /**
+     * @return the template which was used to create the given worker or null if there is no such template (anymore)
+     */
+    public NomadWorkerTemplate getTemplateOf(NomadWorker worker) {
+        for (NomadWorkerTemplate t : templates) {
+            if (t.isTemplateOf(worker)) {
+                return t;
+            }
+        }
+        return null;
     }
 
     // Find the correct template for job
     public NomadWorkerTemplate getTemplate(Label label) {
-        for (NomadWorkerTemplate t : templates) {
+        String key = label == null ? null : label.getExpression();
+        Optional<NomadWorkerTemplate> cached = templateCache.get(key);
+        if (cached == null) {
+            cached = Optional.ofNullable(findTemplate(label));
+            templateCache.put(key, cached);
+        }
+        return cached.orElse(null);
+    }
+
+    /**
+     * Resolves the template for a given label by using the label sets which were parsed when the configuration was loaded.
+     */
+    private NomadWorkerTemplate findTemplate(Label label) {
+        for (int i = 0; i < templates.size(); i++) {
+            NomadWorkerTemplate t = templates.get(i);
             if (label == null && !t.getLabels().isEmpty()) {
                 continue;
             }
-            if ((label == null && t.getLabels().isEmpty()) || (label != null && label.matches(Label.parse(t.getLabels())))) {
+            if ((label == null && t.getLabels().isEmpty()) || (label != null && label.matches(templateLabels.get(i)))) {
                 return t;
             }
         }
@@ -225,14 +800,236 @@ public class NomadCloud extends AbstractCloudImpl {
         return nomadACLCredentialsId;
     }
 
+    /**
+     * Provides the Nomad ACL token. The token is cached and resolved again when the credentials change or when the cached token is older
+     * than a minute, so that the credential store is not scanned for every single request.
+     */
     public String getNomadACL() {
-        return secretFor(this.getNomadACLCredentialsId());
+        CachedToken token = nomadACL;
+        long generation = CREDENTIALS_GENERATION.get();
+        if (token == null || token.generation != generation || token.expiry < System.currentTimeMillis()) {
+            token = new CachedToken(secretFor(this.getNomadACLCredentialsId()), generation,
+                    System.currentTimeMillis() + ACL_TOKEN_TTL);
+            nomadACL = token;
+        }
+        return token.value;
     }
 
     public boolean isPrune() {
         return prune;
     }
 
+    /**
+     * @return interval in minutes between two runs of the orphan pruner
+     */
+    public int getPruneInterval() {
+        return pruneInterval > 0 ? pruneInterval : DEFAULT_PRUNE_INTERVAL;
+    }
+
+    @DataBoundSetter
+    public void setPruneInterval(int pruneInterval) {
+        this.pruneInterval = pruneInterval;
+    }
+
+    /**
+     * @return maximum number of Nomad API calls per run of the orphan pruner
+     */
+    public int getPruneMaxApiCalls() {
+        return pruneMaxApiCalls > 0 ? pruneMaxApiCalls : DEFAULT_PRUNE_MAX_API_CALLS;
+    }
+
+    @DataBoundSetter
+    public void setPruneMaxApiCalls(int pruneMaxApiCalls) {
+        this.pruneMaxApiCalls = pruneMaxApiCalls;
+    }
+
+    /**
+     * @return maximum number of idle connections which are kept in the connection pool
+     */
+    public int getConnectionPoolSize() {
+        return connectionPoolSize > 0 ? connectionPoolSize : DEFAULT_CONNECTION_POOL_SIZE;
+    }
+
+    @DataBoundSetter
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    /**
+     * @return time in seconds an idle connection is kept in the connection pool
+     */
+    public int getKeepAliveDuration() {
+        return keepAliveDuration > 0 ? keepAliveDuration : DEFAULT_KEEP_ALIVE_DURATION;
+    }
+
+    @DataBoundSetter
+    public void setKeepAliveDuration(int keepAliveDuration) {
+        this.keepAliveDuration = keepAliveDuration;
+    }
+
+    /**
+     * @return connect timeout in seconds
+     */
+    public int getConnectTimeout() {
+        return connectTimeout > 0 ? connectTimeout : DEFAULT_TIMEOUT;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return read timeout in seconds
+     */
+    public int getReadTimeout() {
+        return readTimeout > 0 ? readTimeout : DEFAULT_TIMEOUT;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @return write timeout in seconds
+     */
+    public int getWriteTimeout() {
+        return writeTimeout > 0 ? writeTimeout : DEFAULT_TIMEOUT;
+    }
+
+    @DataBoundSetter
+    public void setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * @return timeout in seconds for a whole call (including redirects and retries), 0 means no timeout
+     */
+    public int getCallTimeout() {
+        return Math.max(callTimeout, 0);
+    }
+
+    @DataBoundSetter
+    public void setCallTimeout(int callTimeout) {
+        this.callTimeout = callTimeout;
+    }
+
+    /**
+     * @return maximum number of concurrent requests to a single Nomad server (a request counts until its response headers are received,
+     * blocking queries and the event stream do not count)
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost > 0 ? maxRequestsPerHost : DEFAULT_MAX_REQUESTS_PER_HOST;
+    }
+
+    @DataBoundSetter
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * @return maximum number of workers of this cloud (connected or on their way, 0 means no limit)
+     */
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    @DataBoundSetter
+    public void setMaxInstances(int maxInstances) {
+        this.maxInstances = Math.max(0, maxInstances);
+    }
+
+    /**
+     * @return true if workers are provisioned ahead of the expected demand (see {@link NomadDemandForecaster})
+     */
+    public boolean isPredictiveProvisioning() {
+        return predictiveProvisioning;
+    }
+
+    @DataBoundSetter
+    public void setPredictiveProvisioning(boolean predictiveProvisioning) {
+        this.predictiveProvisioning = predictiveProvisioning;
+    }
+
+    /**
+     * @return maximum number of executors per label which are provisioned ahead of the current demand
+     */
+    public int getPredictiveHeadroom() {
+        return predictiveHeadroom > 0 ? predictiveHeadroom : DEFAULT_PREDICTIVE_HEADROOM;
+    }
+
+    @DataBoundSetter
+    public void setPredictiveHeadroom(int predictiveHeadroom) {
+        this.predictiveHeadroom = predictiveHeadroom;
+    }
+
+    /**
+     * @return true if launches are limited to the number of workers the Nomad cluster can place (see {@link NomadClusterCapacity})
+     */
+    public boolean isCapacityCheck() {
+        return capacityCheck;
+    }
+
+    @DataBoundSetter
+    public void setCapacityCheck(boolean capacityCheck) {
+        this.capacityCheck = capacityCheck;
+    }
+
+    /**
+     * @return maximum number of jobs which are registered at Nomad per second
+     */
+    public int getRegistrationRate() {
+        return registrationRate > 0 ? registrationRate : DEFAULT_REGISTRATION_RATE;
+    }
+
+    @DataBoundSetter
+    public void setRegistrationRate(int registrationRate) {
+        this.registrationRate = registrationRate;
+        this.pipeline = null;
+    }
+
+    /**
+     * @return maximum number of job registrations which are in flight at the same time
+     */
+    public int getMaxRegistrations() {
+        return maxRegistrations > 0 ? maxRegistrations : DEFAULT_MAX_REGISTRATIONS;
+    }
+
+    @DataBoundSetter
+    public void setMaxRegistrations(int maxRegistrations) {
+        this.maxRegistrations = maxRegistrations;
+        this.pipeline = null;
+    }
+
+    /**
+     * @return average time in milliseconds from provisioning a worker of a given template until it is connected (one minute as long as
+     * no worker of the template was launched)
+     */
+    long getExpectedStartupTime(NomadWorkerTemplate template) {
+        NomadLatencyHistogram launch = launchStats.get(template.getPrefix(), NomadLaunchTimeline.Phase.LAUNCH);
+        return launch != null && launch.getCount() > 0 ? launch.getMean() : DEFAULT_STARTUP_TIME;
+    }
+
+    /**
+     * @return true if reads may be answered by any Nomad server (not only by the leader)
+     */
+    public boolean isStaleReads() {
+        return staleReads;
+    }
+
+    @DataBoundSetter
+    public void setStaleReads(boolean staleReads) {
+        this.staleReads = staleReads;
+    }
+
+    /**
+     * @return current usage of the connection pool (e.g. "3 active, 2 idle")
+     */
+    public String getConnectionPoolStats() {
+        return nomad.getActiveConnectionCount() + " active, " + nomad.getIdleConnectionCount() + " idle";
+    }
+
     public List<NomadWorkerTemplate> getTemplates() {
         return templates;
     }
@@ -241,14 +1038,78 @@ public class NomadCloud extends AbstractCloudImpl {
         this.nomad = nomad;
     }
 
+    /**
+     * @return number of executors of all workers which were requested by the NodeProvisioner and are not connected yet
+     */
     public int getPending() {
-        return pending;
+        return launches.getPlannedExecutors();
+    }
+
+    /**
+     * @return the demand forecast of all labels (only fed when {@link #isPredictiveProvisioning()} is set)
+     */
+    NomadDemandForecaster forecaster() {
+        return forecaster;
+    }
+
+    /**
+     * @return the number of workers the Nomad cluster can place (only refreshed when {@link #isCapacityCheck()} is set)
+     */
+    NomadClusterCapacity capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return all launches which are in flight (i.e. not connected or failed yet)
+     */
+    NomadLaunchRegistry launches() {
+        return launches;
     }
 
     public NomadApi nomad() {
         return nomad;
     }
 
+    /**
+     * @return the subscriber of the Nomad event stream (only started when {@link #isEventStream()} is set)
+     */
+    public NomadEventStream events() {
+        return events;
+    }
+
+    /**
+     * @return the local snapshot of the Nomad jobs of all templates
+     */
+    public NomadJobWatcher jobs() {
+        return jobs;
+    }
+
+    /**
+     * @return latency histograms of the launch phases of all templates
+     */
+    public NomadLaunchStats launchStats() {
+        return launchStats;
+    }
+
+    /**
+     * @return the queue which stops the Nomad jobs of terminated workers
+     */
+    public NomadTerminator terminator() {
+        return terminator;
+    }
+
+    public boolean isEventStream() {
+        return eventStream == null || eventStream;
+    }
+
+    /**
+     * @param eventStream true if the Nomad event stream should be used to detect failed workers as early as possible
+     */
+    @DataBoundSetter
+    public void setEventStream(boolean eventStream) {
+        this.eventStream = eventStream;
+    }
+
     public boolean isTlsEnabled() {
         return tlsEnabled;
     }
@@ -334,71 +1195,47 @@ public class NomadCloud extends AbstractCloudImpl {
         }
     }
 
-    private class ProvisioningCallback implements Callable<Node> {
-
-        String workerName;
-        NomadWorkerTemplate template;
-        NomadCloud cloud;
+    /**
+     * Completes the pending launch of a {@link NomadWorker} as soon as its agent comes online. The launch is completed by the cloud
+     * instance which started it, which is not the configured instance anymore if the cloud was reconfigured in the meantime.
+     */
+    @Extension
+    public static class LaunchListener extends ComputerListener {
 
-        public ProvisioningCallback(String workerName, NomadWorkerTemplate template, NomadCloud cloud) {
-            this.workerName = workerName;
-            this.template = template;
-            this.cloud = cloud;
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (c instanceof NomadComputer) {
+                NomadCloud cloud = launchingCloud(c.getName());
+                if (cloud != null) {
+                    cloud.completeLaunch(c.getName());
+                }
+            }
         }
+    }
 
-        public Node call() throws Exception {
-            final NomadWorker worker = new NomadWorker(
-                    workerName,
-                    name,
-                    template.getLabels(),
-                    template.getNumExecutors(),
-                    template.getIdleTerminationInMinutes(),
-                    template.isReusable(),
-                    template.getRemoteFs()
-            );
-            Jenkins.get().addNode(worker);
-
-            String jnlpSecret = JnlpAgentReceiver.SLAVE_SECRET.mac(workerName);
-
-            LOGGER.log(Level.INFO, "Asking Nomad to schedule new Jenkins worker");
+    /**
+     * Invalidates the cached Nomad ACL tokens of all clouds whenever the system credentials are saved.
+     */
+    @Extension
+    public static class CredentialsListener extends SaveableListener {
 
-            String workerJob = nomad.startWorker(workerName, jnlpSecret, template);
-            JSONObject workerJobJSON = new JSONObject(workerJob).getJSONObject("Job");
-            String namespace = workerJobJSON.optString("Namespace");
-            if (!namespace.equals("")) {
-                   worker.setNamespace(namespace);
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                CREDENTIALS_GENERATION.incrementAndGet();
             }
-            worker.setRegion(workerJobJSON.optString("Region"));
-
-            // Check scheduling success
-            Callable<Boolean> callableTask = () -> {
-                try {
-                    LOGGER.log(Level.INFO, "Worker scheduled, waiting for connection");
-                    Objects.requireNonNull(worker.toComputer()).waitUntilOnline();
-                } catch (InterruptedException e) {
-                    LOGGER.log(Level.SEVERE, "Waiting for connection was interrupted");
-                    return false;
-                }
-                return true;
-            };
+        }
+    }
 
-            // Schedule a worker and wait for the computer to come online
-            ExecutorService executorService = Executors.newCachedThreadPool();
-            Future<Boolean> future = executorService.submit(callableTask);
+    private static final class CachedToken {
+        private final String value;
+        private final long generation;
+        private final long expiry;
 
-            try {
-                future.get(cloud.workerTimeout, TimeUnit.MINUTES);
-                LOGGER.log(Level.INFO, "Connection established");
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "Worker computer did not come online within " + workerTimeout + " minutes, terminating worker" + worker);
-                worker.terminate();
-                throw new RuntimeException("Timed out waiting for agent to start up. Timeout: " + workerTimeout + " minutes.");
-            } finally {
-                future.cancel(true);
-                executorService.shutdown();
-                pending -= template.getNumExecutors();
-            }
-            return worker;
+        private CachedToken(String value, long generation, long expiry) {
+            this.value = value;
+            this.generation = generation;
+            this.expiry = expiry;
         }
     }
 }
@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The number of workers per template the Nomad cluster of a {@link NomadCloud} can place right now. It is estimated periodically by a
+ * plan dry run per template (see {@link NomadApi#planCapacity(NomadWorkerTemplate, int)}), every launch since then uses up one of the
+ * estimated places. A launch which fails gives its place back, a launch which connects keeps it until the next estimate (which includes
+ * its allocation). Every refresh starts over with a new estimate or none at all if the plan fails. Templates without an estimate, with an
+ * outdated estimate or with more places than probed are not limited.
+ *
+ * @see NomadCapacityMonitor
+ */
+final class NomadClusterCapacity {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadClusterCapacity.class.getName());
+    static final int PROBE_SIZE = 20;
+    private static final long MAX_AGE = 120000;
+
+    /**
+     * Result of the last plan of a single template.
+     */
+    private static final class Estimate {
+        private final int placeable;
+        private final long timestamp;
+        private int used;
+        private int shortfall;
+
+        private Estimate(int placeable, long timestamp) {
+            this.placeable = placeable;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Places which were taken from a single estimate.
+     */
+    static final class Grant {
+        private final int count;
+        private final Estimate estimate;
+
+        private Grant(int count, Estimate estimate) {
+            this.count = count;
+            this.estimate = estimate;
+        }
+
+        /**
+         * @return number of workers which may be launched
+         */
+        int getCount() {
+            return count;
+        }
+    }
+
+    private final Map<NomadWorkerTemplate, Estimate> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Plans every given template again. A template whose plan fails is not limited until its next successful plan.
+     */
+    void refresh(NomadApi nomad, Collection<NomadWorkerTemplate> templates) {
+        long now = System.currentTimeMillis();
+        for (NomadWorkerTemplate template : templates) {
+            try {
+                int placeable = nomad.planCapacity(template, PROBE_SIZE);
+                estimates.put(template, new Estimate(placeable < PROBE_SIZE ? placeable : -1, now));
+                LOGGER.log(Level.FINE, "Nomad can place " + (placeable < PROBE_SIZE ? placeable : "at least " + PROBE_SIZE)
+                        + " workers of template " + template.getPrefix());
+            } catch (IOException | RuntimeException e) {
+                estimates.remove(template);
+                LOGGER.log(Level.FINE, "Unable to plan capacity of template " + template.getPrefix() + ": " + e.getMessage());
+            }
+        }
+        estimates.keySet().retainAll(templates);
+    }
+
+    /**
+     * Takes places for new workers of a given template.
+     * @param wanted number of workers which should be launched
+     * @return the places which were taken, i.e. the number of workers which may be launched (Nomad can place them)
+     */
+    Grant acquire(NomadWorkerTemplate template, int wanted) {
+        Estimate estimate = estimates.get(template);
+        if (estimate == null || estimate.placeable < 0 || System.currentTimeMillis() - estimate.timestamp > MAX_AGE) {
+            return new Grant(wanted, null);
+        }
+        synchronized (estimate) {
+            int granted = Math.max(0, Math.min(wanted, estimate.placeable - estimate.used));
+            estimate.used += granted;
+            estimate.shortfall = wanted - granted;
+            return new Grant(granted, estimate);
+        }
+    }
+
+    /**
+     * Gives back a single place of a launch which failed. Nothing happens if the place was not limited or if the estimate it was taken
+     * from was replaced in the meantime.
+     */
+    void release(Grant grant) {
+        if (grant == null || grant.estimate == null) {
+            return;
+        }
+        synchronized (grant.estimate) {
+            grant.estimate.used = Math.max(0, grant.estimate.used - 1);
+        }
+    }
+
+    /**
+     * @return the estimates of all templates in JSON format (placeable is -1 if the template is not limited)
+     */
+    JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        estimates.forEach((template, estimate) -> {
+            synchronized (estimate) {
+                JsonObject e = new JsonObject();
+                e.addProperty("placeable", estimate.placeable);
+                e.addProperty("used", estimate.used);
+                e.addProperty("shortfall", estimate.shortfall);
+                e.addProperty("timestamp", estimate.timestamp);
+                json.add(template.getPrefix(), e);
+            }
+        });
+        return json;
+    }
+
+}
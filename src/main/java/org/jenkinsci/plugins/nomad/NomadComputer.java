@@ -22,6 +22,24 @@ public class NomadComputer extends AbstractCloudComputer<NomadWorker> {
             setAcceptingTasks(false);
         }
         LOGGER.log(Level.INFO, " Computer " + this + ": task accepted");
+        recordFirstTask();
+    }
+
+    /**
+     * Completes the launch timeline of the worker when it accepts its first task.
+     */
+    private void recordFirstTask() {
+        NomadWorker node = getNode();
+        NomadLaunchTimeline timeline = node != null ? node.getLaunchTimeline() : null;
+        if (timeline == null || !timeline.mark(NomadLaunchTimeline.Milestone.FIRST_TASK)) {
+            return;
+        }
+        NomadCloud cloud = node.getCloud();
+        NomadWorkerTemplate template = cloud != null ? cloud.getTemplateOf(node) : null;
+        if (template != null) {
+            cloud.launchStats().record(template.getPrefix(), timeline, NomadLaunchTimeline.Milestone.FIRST_TASK,
+                    NomadLaunchTimeline.Milestone.FIRST_TASK);
+        }
     }
 
     private boolean isReusable() {
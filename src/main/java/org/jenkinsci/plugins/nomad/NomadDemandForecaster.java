@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Forecasts the demand (busy executors plus queued items) of each label by double exponential smoothing (Holt) of the load statistics
+ * the provisioning strategy sees. The trend is the rate at which the demand grows, so the forecast for the startup time of a worker
+ * tells how many executors will be needed once a worker which is requested now is connected.
+ *
+ * @see NomadProvisioningStrategy
+ */
+final class NomadDemandForecaster {
+
+    private static final double ALPHA = 0.5;
+    private static final double BETA = 0.3;
+    private static final long MIN_INTERVAL = 1000;
+    private static final long MAX_INTERVAL = 600000;
+
+    /**
+     * Smoothed demand of a single label.
+     */
+    private static final class State {
+        private double level;
+        /** change of the demand per second */
+        private double trend;
+        private long timestamp;
+    }
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    /**
+     * Records the current demand of a given label. Observations which are less than a second apart are ignored, the history is reset when
+     * the last observation is older than ten minutes.
+     * @param label label expression (empty for jobs without label)
+     * @param demand busy executors plus queued items
+     * @param timestamp time of the observation in milliseconds
+     */
+    void observe(String label, int demand, long timestamp) {
+        State state = states.computeIfAbsent(label, l -> new State());
+        synchronized (state) {
+            long interval = timestamp - state.timestamp;
+            if (state.timestamp == 0 || interval > MAX_INTERVAL) {
+                state.level = demand;
+                state.trend = 0;
+                state.timestamp = timestamp;
+                return;
+            }
+            if (interval < MIN_INTERVAL) {
+                return;
+            }
+            double seconds = interval / 1000.0;
+            double previous = state.level;
+            state.level = ALPHA * demand + (1 - ALPHA) * (state.level + state.trend * seconds);
+            state.trend = BETA * (state.level - previous) / seconds + (1 - BETA) * state.trend;
+            state.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * @param label label expression (empty for jobs without label)
+     * @param horizon time in seconds from the last observation
+     * @return the expected demand of a given label after the given time or -1 if nothing was observed yet
+     */
+    double forecast(String label, double horizon) {
+        State state = states.get(label);
+        if (state == null) {
+            return -1;
+        }
+        synchronized (state) {
+            return Math.max(0, state.level + state.trend * horizon);
+        }
+    }
+
+}
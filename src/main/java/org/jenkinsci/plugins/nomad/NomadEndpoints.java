@@ -0,0 +1,222 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+
+/**
+ * The Nomad servers of a {@link NomadCloud} (see {@link NomadCloud#getNomadUrl()}, a comma separated list of URLs). Reads are spread over
+ * all healthy servers, writes are sent to the leader (if known) so that Nomad does not have to forward them. A server which fails is
+ * skipped until a health check reports it as healthy again. Every server has a circuit breaker of its own, so that a failing server does
+ * not block requests to the others. The number of concurrent requests per server can be limited.
+ */
+final class NomadEndpoints {
+
+    /**
+     * A single Nomad server.
+     */
+    static final class Endpoint {
+        private final String url;
+        private final Semaphore requests;
+        private final NomadCircuitBreaker breaker;
+        private volatile boolean healthy = true;
+        private volatile boolean leader;
+
+        Endpoint(String url, int maxRequests) {
+            this.url = url;
+            this.requests = maxRequests > 0 ? new Semaphore(maxRequests, true) : null;
+            this.breaker = new NomadCircuitBreaker(url);
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        boolean isHealthy() {
+            return healthy;
+        }
+
+        boolean isLeader() {
+            return leader;
+        }
+
+        NomadCircuitBreaker getBreaker() {
+            return breaker;
+        }
+
+        /**
+         * @return true if the server is healthy and its circuit breaker lets requests through
+         */
+        private boolean isAvailable() {
+            return healthy && breaker.isAvailable();
+        }
+
+        /**
+         * Waits until another request may be sent to this server.
+         */
+        void acquire() throws InterruptedException {
+            if (requests != null) {
+                requests.acquire();
+            }
+        }
+
+        /**
+         * Frees the slot of a request which was allowed by {@link #acquire()}.
+         */
+        void release() {
+            if (requests != null) {
+                requests.release();
+            }
+        }
+
+        /**
+         * @return number of requests which may still be sent right away ({@link Integer#MAX_VALUE} if there is no limit)
+         */
+        int getAvailableRequests() {
+            return requests != null ? requests.availablePermits() : Integer.MAX_VALUE;
+        }
+    }
+
+    private final String nomadUrl;
+    private final int maxRequestsPerHost;
+    private final List<Endpoint> endpoints;
+    private final NomadCircuitBreaker fallback = new NomadCircuitBreaker("API");
+    private final AtomicInteger next = new AtomicInteger();
+
+    NomadEndpoints(String nomadUrl) {
+        this(nomadUrl, 0);
+    }
+
+    /**
+     * @param nomadUrl comma separated list of URLs
+     * @param maxRequestsPerHost maximum number of concurrent requests per server (0 means no limit)
+     */
+    NomadEndpoints(String nomadUrl, int maxRequestsPerHost) {
+        this.nomadUrl = nomadUrl;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String url : parse(nomadUrl)) {
+            endpoints.add(new Endpoint(url, maxRequestsPerHost));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    /**
+     * Splits a comma (or whitespace) separated list of URLs. The URLs are normalized and trailing slashes are removed.
+     */
+    static List<String> parse(String nomadUrl) {
+        List<String> urls = new ArrayList<>();
+        if (nomadUrl != null) {
+            for (String url : nomadUrl.split("[,\\s]+")) {
+                HttpUrl parsed = HttpUrl.parse(url.trim());
+                url = parsed != null ? parsed.toString() : url.trim();
+                while (url.endsWith("/")) {
+                    url = url.substring(0, url.length() - 1);
+                }
+                if (!url.isEmpty()) {
+                    urls.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * @return the configuration these endpoints were created from
+     */
+    String getNomadUrl() {
+        return nomadUrl;
+    }
+
+    int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return the next available server (round robin) or the next server at all if none is available
+     */
+    Endpoint forRead() {
+        if (endpoints.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get((start + i) % endpoints.size());
+            if (endpoint.isAvailable()) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(start);
+    }
+
+    /**
+     * @return the leader if it is known and available otherwise the same as {@link #forRead()}
+     */
+    Endpoint forWrite() {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.leader && endpoint.isAvailable()) {
+                return endpoint;
+            }
+        }
+        return forRead();
+    }
+
+    /**
+     * @return the server a given URL belongs to or null if the URL does not belong to any server
+     */
+    Endpoint of(HttpUrl url) {
+        String value = url.toString();
+        for (Endpoint endpoint : endpoints) {
+            if (value.startsWith(endpoint.url + "/") || value.equals(endpoint.url)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the circuit breaker of the server a given URL belongs to or a shared one if the URL does not belong to any server
+     */
+    NomadCircuitBreaker breakerOf(HttpUrl url) {
+        Endpoint endpoint = of(url);
+        return endpoint != null ? endpoint.breaker : fallback;
+    }
+
+    /**
+     * Moves a given URL from the server it belongs to to another server.
+     * @return the URL on the other server or the given URL if it does not belong to any server
+     */
+    HttpUrl moveTo(HttpUrl url, Endpoint target) {
+        Endpoint source = of(url);
+        if (source == null || source == target) {
+            return url;
+        }
+        HttpUrl moved = HttpUrl.parse(target.url + url.toString().substring(source.url.length()));
+        return moved != null ? moved : url;
+    }
+
+    /**
+     * Marks a given server as unhealthy, so that it is skipped until the next successful health check.
+     */
+    void markFailed(Endpoint endpoint) {
+        endpoint.healthy = false;
+        endpoint.leader = false;
+    }
+
+    /**
+     * Records the result of a health check.
+     */
+    void update(Endpoint endpoint, boolean healthy, boolean leader) {
+        endpoint.healthy = healthy;
+        endpoint.leader = healthy && leader;
+    }
+
+}
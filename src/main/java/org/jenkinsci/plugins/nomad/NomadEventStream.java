@@ -0,0 +1,373 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import jenkins.model.Jenkins;
+import okhttp3.Call;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Subscribes to the Nomad event stream (see /v1/event/stream) of a {@link NomadCloud} and keeps track of the state of all jobs which were
+ * started by one of its templates. It allows to fail fast when the evaluation of a worker fails or when the worker dies right away. A
+ * placement which is blocked because the cluster is full is no failure, Nomad places the worker as soon as there is room again.
+ */
+public final class NomadEventStream implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadEventStream.class.getName());
+    private static final long MIN_RECONNECT_DELAY = 1000;
+    private static final long MAX_RECONNECT_DELAY = 60000;
+    private static final long UNSUPPORTED_RECONNECT_DELAY = 300000;
+    private static final int MAX_STATES = 10000;
+
+    /**
+     * State of a worker job as reported by Nomad.
+     */
+    public enum Status {
+        PENDING, PLACED, RUNNING, COMPLETE, FAILED, DEAD;
+
+        public boolean isTerminal() {
+            return this == COMPLETE || this == FAILED || this == DEAD;
+        }
+    }
+
+    /**
+     * Latest known state of a single worker job.
+     */
+    public static final class WorkerState {
+        private final Status status;
+        private final String message;
+        private final long timestamp;
+        private final long placedTimestamp;
+        private final long startedTimestamp;
+
+        /**
+         * @param previous the previous state of the job (if any), the time of placement and start are taken over
+         */
+        WorkerState(Status status, String message, WorkerState previous) {
+            this.status = status;
+            this.message = message;
+            this.timestamp = System.currentTimeMillis();
+            this.placedTimestamp = status == Status.PLACED ? timestamp : previous != null ? previous.placedTimestamp : 0;
+            this.startedTimestamp = status == Status.RUNNING ? timestamp : previous != null ? previous.startedTimestamp : 0;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return time the allocation was placed or 0 if that was not reported
+         */
+        public long getPlacedTimestamp() {
+            return placedTimestamp;
+        }
+
+        /**
+         * @return time the allocation started running or 0 if that was not reported
+         */
+        public long getStartedTimestamp() {
+            return startedTimestamp;
+        }
+    }
+
+    private final NomadCloud cloud;
+    private final Map<String, WorkerState> states = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> failures = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile Call call;
+    private volatile long index;
+
+    NomadEventStream(NomadCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Starts the subscriber thread unless it is already running.
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this, "Nomad event stream [" + cloud.getName() + "]");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the subscriber thread.
+     */
+    synchronized void stop() {
+        running = false;
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * @return the latest known state of a given job or null if there is no state yet
+     */
+    public WorkerState getState(String jobId) {
+        return states.get(jobId);
+    }
+
+    /**
+     * Provides a future which completes with a message as soon as Nomad reports that the given job could not be placed, failed or is
+     * dead. The future never completes when the worker comes up as expected.
+     * @param jobId ID of the worker job
+     */
+    public CompletableFuture<String> watchFailure(String jobId) {
+        CompletableFuture<String> failure = failures.computeIfAbsent(jobId, id -> new CompletableFuture<>());
+        WorkerState state = states.get(jobId);
+        if (state != null && isFailure(state.getStatus())) {
+            failure.complete(state.getMessage());
+        }
+        return failure;
+    }
+
+    /**
+     * Removes everything which is known about a given job (e.g. when the corresponding worker was terminated).
+     */
+    public void forget(String jobId) {
+        states.remove(jobId);
+        failures.remove(jobId);
+    }
+
+    @Override
+    public void run() {
+        long delay = MIN_RECONNECT_DELAY;
+        while (isActive()) {
+            try {
+                delay = subscribe() ? MIN_RECONNECT_DELAY : UNSUPPORTED_RECONNECT_DELAY;
+            } catch (IOException | RuntimeException e) {
+                if (isActive()) {
+                    LOGGER.log(Level.WARNING, "Nomad event stream of cloud " + cloud.getName() + " failed: " + e.getMessage());
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        running = false;
+        LOGGER.log(Level.FINE, "Nomad event stream of cloud " + cloud.getName() + " stopped");
+    }
+
+    /**
+     * Reads the event stream until it ends or the cloud is not active anymore.
+     * @return false if the event stream is not available (e.g. Nomad &lt; 1.0 or missing ACL permissions) otherwise true
+     */
+    private boolean subscribe() throws IOException {
+        Call current = cloud.nomad().eventStream(index);
+        call = current;
+        try (Response response = current.execute(); ResponseBody body = response.body()) {
+            if (!response.isSuccessful() || body == null) {
+                LOGGER.log(Level.WARNING, "Nomad event stream of cloud " + cloud.getName() + " is not available! Code: " + response.code());
+                return false;
+            }
+            LOGGER.log(Level.FINE, "Subscribed to Nomad event stream of cloud " + cloud.getName());
+            JsonReader reader = new JsonReader(body.charStream());
+            reader.setLenient(true);
+            while (isActive() && reader.peek() != JsonToken.END_DOCUMENT) {
+                JsonElement element = JsonParser.parseReader(reader);
+                if (element.isJsonObject()) {
+                    handle(element.getAsJsonObject());
+                }
+            }
+            return true;
+        } finally {
+            call = null;
+        }
+    }
+
+    /**
+     * Handles a single message of the event stream. Empty messages are heartbeats.
+     */
+    void handle(JsonObject message) {
+        if (message.has("Index")) {
+            index = Math.max(index, message.get("Index").getAsLong());
+        }
+        if (!message.has("Events") || !message.get("Events").isJsonArray()) {
+            return;
+        }
+        for (JsonElement event : message.getAsJsonArray("Events")) {
+            if (event.isJsonObject()) {
+                handleEvent(event.getAsJsonObject());
+            }
+        }
+    }
+
+    private void handleEvent(JsonObject event) {
+        String topic = getString(event, "Topic");
+        String type = getString(event, "Type");
+        JsonObject payload = event.has("Payload") && event.get("Payload").isJsonObject() ? event.getAsJsonObject("Payload") : null;
+        if (payload == null || topic == null) {
+            return;
+        }
+
+        switch (topic) {
+            case "Allocation":
+                handleAllocation(getObject(payload, "Allocation"));
+                break;
+            case "Evaluation":
+                handleEvaluation(getObject(payload, "Evaluation"));
+                break;
+            case "Job":
+                handleJob(type, getObject(payload, "Job"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleAllocation(JsonObject allocation) {
+        String jobId = getString(allocation, "JobID");
+        if (!isWorkerJob(jobId)) {
+            return;
+        }
+        String clientStatus = String.valueOf(getString(allocation, "ClientStatus"));
+        switch (clientStatus) {
+            case "pending":
+                update(jobId, Status.PLACED, "allocation placed on node " + getString(allocation, "NodeID"));
+                break;
+            case "running":
+                update(jobId, Status.RUNNING, "allocation running");
+                break;
+            case "complete":
+                update(jobId, Status.COMPLETE, "allocation complete");
+                break;
+            case "failed":
+            case "lost":
+                update(jobId, Status.FAILED, "allocation " + clientStatus + describe(getString(allocation, "ClientDescription")));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleEvaluation(JsonObject evaluation) {
+        String jobId = getString(evaluation, "JobID");
+        if (!isWorkerJob(jobId)) {
+            return;
+        }
+        JsonObject failedAllocations = getObject(evaluation, "FailedTGAllocs");
+        WorkerState state = states.get(jobId);
+        if ("failed".equals(getString(evaluation, "Status"))) {
+            update(jobId, Status.FAILED, "evaluation failed" + describe(getString(evaluation, "StatusDescription")));
+        } else if (failedAllocations != null && failedAllocations.size() > 0) {
+            // the cluster is full right now, Nomad places the allocation later (blocked evaluation), the worker timeout applies meanwhile
+            if (state == null || state.getStatus() == Status.PENDING) {
+                String blocked = getString(evaluation, "BlockedEval");
+                update(jobId, Status.PENDING, "placement of task group(s) " + failedAllocations.keySet() + " is "
+                        + (blocked != null && !blocked.isEmpty() ? "blocked by evaluation " + blocked : "not possible right now"));
+            }
+        } else if (state == null) {
+            update(jobId, Status.PENDING, "evaluation " + getString(evaluation, "Status"));
+        }
+    }
+
+    private void handleJob(String type, JsonObject job) {
+        String jobId = getString(job, "ID");
+        if (!isWorkerJob(jobId)) {
+            return;
+        }
+        if ("JobDeregistered".equals(type) || "dead".equals(getString(job, "Status"))) {
+            update(jobId, Status.DEAD, "job is dead");
+        } else if (!states.containsKey(jobId)) {
+            update(jobId, Status.PENDING, "job registered");
+        }
+    }
+
+    private void update(String jobId, Status status, String message) {
+        WorkerState previous = states.get(jobId);
+        if (previous != null && previous.getStatus().isTerminal() && !status.isTerminal()) {
+            return;
+        }
+        LOGGER.log(Level.FINE, "Worker job " + jobId + ": " + status + " (" + message + ")");
+
+        if (status.isTerminal() && states.size() > MAX_STATES) {
+            states.remove(jobId);
+        } else {
+            states.put(jobId, new WorkerState(status, message, previous));
+        }
+        if (isFailure(status)) {
+            CompletableFuture<String> failure = failures.remove(jobId);
+            if (failure != null) {
+                failure.complete(message);
+            }
+        }
+    }
+
+    private static boolean isFailure(Status status) {
+        return status == Status.FAILED || status == Status.DEAD;
+    }
+
+    /**
+     * @return true if the given job was created by one of the templates of the cloud
+     */
+    private boolean isWorkerJob(String jobId) {
+        if (jobId == null) {
+            return false;
+        }
+        for (NomadWorkerTemplate template : cloud.getTemplates()) {
+            if (jobId.startsWith(template.getPrefix() + "-")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true as long as the stream was not stopped and the cloud is still part of the Jenkins configuration
+     */
+    private boolean isActive() {
+        if (!running) {
+            return false;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins != null && jenkins.clouds.contains(cloud);
+    }
+
+    private static String describe(String description) {
+        return description == null || description.isEmpty() ? "" : ": " + description;
+    }
+
+    private static JsonObject getObject(JsonObject object, String name) {
+        if (object == null || !object.has(name) || !object.get(name).isJsonObject()) {
+            return null;
+        }
+        return object.getAsJsonObject(name);
+    }
+
+    private static String getString(JsonObject object, String name) {
+        if (object == null || !object.has(name) || !object.get(name).isJsonPrimitive()) {
+            return null;
+        }
+        return object.get(name).getAsString();
+    }
+
+}
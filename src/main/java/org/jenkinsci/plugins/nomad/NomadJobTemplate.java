@@ -0,0 +1,223 @@
+package org.jenkinsci.plugins.nomad;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * A job template (in JSON format) which is split at its placeholders once, so that a worker job can be rendered without searching and
+ * copying the whole template for every placeholder. It also provides the static namespace and region of the job.
+ */
+public final class NomadJobTemplate {
+
+    /**
+     * Placeholders which can be used within a job template.
+     */
+    enum Placeholder {
+        WORKER_NAME("%WORKER_NAME%"),
+        WORKER_SECRET("%WORKER_SECRET%"),
+        WORKER_DIR("%WORKER_DIR%");
+
+        private final String token;
+
+        Placeholder(String token) {
+            this.token = token;
+        }
+    }
+
+    private final String json;
+    private final byte[][] parts;
+    private final Placeholder[] placeholders;
+    private final int staticLength;
+    private final String namespace;
+    private final String region;
+
+    /**
+     * @param json Nomad-Job in JSON format (e.g. the result of /v1/jobs/parse wrapped into a "Job" object)
+     */
+    NomadJobTemplate(String json) {
+        this.json = json;
+
+        List<byte[]> parts = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        int staticLength = 0;
+        int start = 0;
+        while (true) {
+            int next = -1;
+            Placeholder placeholder = null;
+            for (Placeholder p : Placeholder.values()) {
+                int index = json.indexOf(p.token, start);
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    placeholder = p;
+                }
+            }
+            byte[] part = json.substring(start, next < 0 ? json.length() : next).getBytes(UTF_8);
+            parts.add(part);
+            staticLength += part.length;
+            if (placeholder == null) {
+                break;
+            }
+            placeholders.add(placeholder);
+            start = next + placeholder.token.length();
+        }
+        this.parts = parts.toArray(new byte[0][]);
+        this.placeholders = placeholders.toArray(new Placeholder[0]);
+        this.staticLength = staticLength;
+
+        JsonObject job = null;
+        try {
+            JsonObject root = NomadApi.GSON.fromJson(json, JsonObject.class);
+            job = root != null && root.has("Job") && root.get("Job").isJsonObject() ? root.getAsJsonObject("Job") : null;
+        } catch (RuntimeException e) {
+            // an invalid template is sent as it is, Nomad will tell what is wrong with it
+        }
+        this.namespace = getString(job, "Namespace");
+        this.region = getString(job, "Region");
+    }
+
+    private static String getString(JsonObject job, String name) {
+        if (job == null) {
+            return null;
+        }
+        JsonElement element = job.get(name);
+        if (element == null || !element.isJsonPrimitive() || element.getAsString().isEmpty()) {
+            return null;
+        }
+        return element.getAsString();
+    }
+
+    /**
+     * @return the job template in JSON format including all placeholders
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * @return the namespace of the job or null if the job does not define a namespace
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * @return the region of the job or null if the job does not define a region
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Renders the job with the given placeholder values into a String.
+     * @param name Name of the Nomad Job (e.g. jenkins-1234)
+     * @param secret Secret used by the jenkins agent to connect to Jenkins
+     * @param dir Workspace root of the jenkins agent
+     * @return Nomad Job in JSON format
+     */
+    public String render(String name, String secret, String dir) {
+        byte[][] values = values(name, secret, dir);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(staticLength + 256);
+        for (int i = 0; i < parts.length; i++) {
+            out.write(parts[i], 0, parts[i].length);
+            if (i < placeholders.length) {
+                byte[] value = values[placeholders[i].ordinal()];
+                out.write(value, 0, value.length);
+            }
+        }
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Renders the job with the given placeholder values directly into the request body (without creating the whole job as String).
+     * @param name Name of the Nomad Job (e.g. jenkins-1234)
+     * @param secret Secret used by the jenkins agent to connect to Jenkins
+     * @param dir Workspace root of the jenkins agent
+     * @return request body which contains the Nomad Job in JSON format
+     */
+    public RequestBody toRequestBody(String name, String secret, String dir) {
+        final byte[][] values = values(name, secret, dir);
+        long length = staticLength;
+        for (Placeholder placeholder : placeholders) {
+            length += values[placeholder.ordinal()].length;
+        }
+        final long contentLength = length;
+
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return NomadApi.JSON;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                for (int i = 0; i < parts.length; i++) {
+                    sink.write(parts[i]);
+                    if (i < placeholders.length) {
+                        sink.write(values[placeholders[i].ordinal()]);
+                    }
+                }
+            }
+        };
+    }
+
+    private static byte[][] values(String name, String secret, String dir) {
+        byte[][] values = new byte[Placeholder.values().length][];
+        values[Placeholder.WORKER_NAME.ordinal()] = escape(name);
+        values[Placeholder.WORKER_SECRET.ordinal()] = escape(secret);
+        values[Placeholder.WORKER_DIR.ordinal()] = escape(dir);
+        return values;
+    }
+
+    /**
+     * Escapes a given value so that it can be used within a JSON string.
+     */
+    private static byte[] escape(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.toString().getBytes(UTF_8);
+    }
+
+}
@@ -0,0 +1,196 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jenkinsci.plugins.nomad.Api.JobInfo;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps a local snapshot of the Nomad jobs of every template prefix of a {@link NomadCloud}. The snapshot is kept up to date by Nomad
+ * blocking queries (see {@link NomadApi#watchJobs(String, long, long)}), so there is almost no API traffic as long as nothing changes.
+ * Pruning and the status page of the cloud read the snapshot instead of polling Nomad on their own. A prefix is only watched once its jobs
+ * are asked for, i.e. while pruning is enabled. Every prefix is watched by a daemon thread of its own (like the {@link NomadEventStream}),
+ * so that blocking queries never hold a thread of a shared pool. Watching a prefix stops as soon as pruning is disabled, the cloud is
+ * removed from the configuration or the prefix is not used by any template anymore.
+ */
+public final class NomadJobWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadJobWatcher.class.getName());
+    private static final long WAIT_SECONDS = 300;
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    /**
+     * Snapshot of the jobs of a single prefix.
+     */
+    private static final class Snapshot {
+        private final Map<String, JobInfo> jobs = new ConcurrentHashMap<>();
+        private volatile long index;
+        private volatile boolean synced;
+        private volatile long retryDelay = MIN_RETRY_DELAY;
+    }
+
+    private final NomadCloud cloud;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    NomadJobWatcher(NomadCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Provides the jobs of a given prefix and starts to watch the prefix unless it is watched already.
+     * @param prefix Prefix of the jobs (e.g. jenkins)
+     * @return all known jobs of the prefix or null if there is no snapshot yet
+     */
+    public Collection<JobInfo> getJobs(String prefix) {
+        Snapshot snapshot = watch(prefix);
+        if (!snapshot.synced) {
+            return null;
+        }
+        return Collections.unmodifiableCollection(new ArrayList<>(snapshot.jobs.values()));
+    }
+
+    /**
+     * @return the latest known state of a given job or null if the job is unknown or its prefix is not watched (yet)
+     */
+    public JobInfo getJob(String jobId) {
+        for (Snapshot snapshot : snapshots.values()) {
+            JobInfo job = snapshot.jobs.get(jobId);
+            if (job != null) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of jobs by status (e.g. running or dead) for every prefix which is watched and in sync with Nomad
+     */
+    public Map<String, Map<String, Integer>> getStatusCounts() {
+        Map<String, Map<String, Integer>> counts = new TreeMap<>();
+        snapshots.forEach((prefix, snapshot) -> {
+            if (snapshot.synced) {
+                Map<String, Integer> byStatus = new TreeMap<>();
+                for (JobInfo job : snapshot.jobs.values()) {
+                    byStatus.merge(String.valueOf(job.getStatus()), 1, Integer::sum);
+                }
+                counts.put(prefix, byStatus);
+            }
+        });
+        return counts;
+    }
+
+    private Snapshot watch(String prefix) {
+        Snapshot[] created = new Snapshot[1];
+        Snapshot snapshot = snapshots.computeIfAbsent(prefix, p -> created[0] = new Snapshot());
+        if (created[0] != null) {
+            Thread thread = new Thread(() -> run(prefix, created[0]), "Nomad job watcher [" + cloud.getName() + "/" + prefix + "]");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Queries the jobs of a given prefix again and again until the prefix is not active anymore.
+     */
+    private void run(String prefix, Snapshot snapshot) {
+        try {
+            while (isActive(prefix)) {
+                long delay = query(prefix, snapshot);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            snapshots.remove(prefix, snapshot);
+            LOGGER.log(Level.FINE, "Stopped watching jobs with prefix " + prefix + " of cloud " + cloud.getName());
+        }
+    }
+
+    /**
+     * @return time in milliseconds to wait before the next query
+     */
+    private long query(String prefix, Snapshot snapshot) {
+        long delay = 0;
+        try {
+            update(snapshot, cloud.nomad().watchJobs(prefix, snapshot.index, WAIT_SECONDS));
+            snapshot.retryDelay = MIN_RETRY_DELAY;
+            if (snapshot.index == 0) {
+                // Nomad did not provide an index, so fall back to polling
+                delay = MAX_RETRY_DELAY;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (isActive(prefix)) {
+                LOGGER.log(Level.WARNING, "Watching jobs with prefix " + prefix + " of cloud " + cloud.getName() + " failed: "
+                        + e.getMessage());
+            }
+            snapshot.index = 0;
+            snapshot.synced = false;
+            delay = snapshot.retryDelay;
+            snapshot.retryDelay = Math.min(delay * 2, MAX_RETRY_DELAY);
+        }
+        return delay;
+    }
+
+    /**
+     * Applies a job list to a snapshot. Only jobs whose ModifyIndex changed are replaced.
+     */
+    void update(String prefix, NomadApi.JobList list) {
+        update(snapshots.computeIfAbsent(prefix, p -> new Snapshot()), list);
+    }
+
+    private static void update(Snapshot snapshot, NomadApi.JobList list) {
+        if (snapshot.synced && list.getIndex() == snapshot.index) {
+            // the wait time is over and nothing changed
+            return;
+        }
+        Set<String> ids = new HashSet<>();
+        for (JobInfo job : list.getJobs()) {
+            ids.add(job.getID());
+            JobInfo known = snapshot.jobs.get(job.getID());
+            if (known == null || job.getModifyIndex() == null || !Objects.equals(known.getModifyIndex(), job.getModifyIndex())) {
+                snapshot.jobs.put(job.getID(), job);
+            }
+        }
+        snapshot.jobs.keySet().retainAll(ids);
+
+        // the index must be reset if it goes backwards (e.g. after a leader election)
+        snapshot.index = list.getIndex() < snapshot.index ? 0 : list.getIndex();
+        snapshot.synced = true;
+    }
+
+    /**
+     * @return true as long as a template with the given prefix exists, the cloud is part of the Jenkins configuration and its orphaned
+     * workers are pruned
+     */
+    private boolean isActive(String prefix) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || !jenkins.clouds.contains(cloud) || !cloud.isPrune()) {
+            return false;
+        }
+        List<NomadWorkerTemplate> templates = cloud.getTemplates();
+        for (NomadWorkerTemplate template : templates) {
+            if (prefix.equals(template.getPrefix())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
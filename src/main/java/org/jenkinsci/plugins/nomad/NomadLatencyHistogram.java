@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A lock-free latency histogram with fixed buckets (in milliseconds). Percentiles are approximated by the upper bound of the bucket they
+ * fall into, which is precise enough to tell a 50 ms call from a 5 s call.
+ */
+public final class NomadLatencyHistogram {
+
+    private static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, 600000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records a single duration.
+     * @param millis duration in milliseconds
+     */
+    public void record(long millis) {
+        long value = Math.max(millis, 0);
+        int bucket = 0;
+        while (bucket < BOUNDS.length && value > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return sum of all recorded durations in milliseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return average duration in milliseconds (0 if nothing was recorded)
+     */
+    public long getMean() {
+        long n = getCount();
+        return n > 0 ? getSum() / n : 0;
+    }
+
+    /**
+     * @param quantile quantile between 0 and 1 (e.g. 0.95)
+     * @return upper bound of the bucket of the given quantile in milliseconds (0 if nothing was recorded, -1 if it is greater than the
+     * largest bucket)
+     */
+    public long getPercentile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return count, mean and percentiles (p50, p90, p95, p99) in JSON format
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", getCount());
+        json.addProperty("mean", getMean());
+        json.addProperty("p50", getPercentile(0.5));
+        json.addProperty("p90", getPercentile(0.9));
+        json.addProperty("p95", getPercentile(0.95));
+        json.addProperty("p99", getPercentile(0.99));
+        return json;
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+import hudson.model.Node;
+
+/**
+ * A worker which was requested from Nomad but is not connected to Jenkins yet. Its future completes when the agent comes online, or
+ * exceptionally when Nomad was not able to start it in time.
+ */
+final class NomadLaunch {
+
+    /**
+     * Progress of a launch.
+     */
+    enum State {
+        /** waiting for a thread to register the job */
+        REQUESTED,
+        /** the job is being registered at Nomad */
+        REGISTERING,
+        /** the job is registered, waiting for the agent to connect */
+        STARTING,
+        /** the agent is connected */
+        CONNECTED,
+        /** the worker could not be started */
+        FAILED
+    }
+
+    private final String workerName;
+    private final NomadWorkerTemplate template;
+    private final boolean planned;
+    private final CompletableFuture<Node> future = new CompletableFuture<>();
+    private final NomadLaunchTimeline timeline = new NomadLaunchTimeline();
+    private volatile NomadWorker worker;
+    private volatile State state = State.REQUESTED;
+    private volatile ScheduledFuture<?> timeout;
+    private volatile NomadClusterCapacity.Grant capacity;
+
+    /**
+     * @param planned true if the launch was requested by the NodeProvisioner, false if it is a warm pool launch
+     */
+    NomadLaunch(String workerName, NomadWorkerTemplate template, boolean planned) {
+        this.workerName = workerName;
+        this.template = template;
+        this.planned = planned;
+        this.timeline.mark(NomadLaunchTimeline.Milestone.PROVISIONED);
+    }
+
+    String getWorkerName() {
+        return workerName;
+    }
+
+    NomadWorkerTemplate getTemplate() {
+        return template;
+    }
+
+    boolean isPlanned() {
+        return planned;
+    }
+
+    CompletableFuture<Node> getFuture() {
+        return future;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    NomadLaunchTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * @return the place in the Nomad cluster which was taken for this launch or null if the capacity was not checked
+     */
+    NomadClusterCapacity.Grant getCapacity() {
+        return capacity;
+    }
+
+    void setCapacity(NomadClusterCapacity.Grant capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the worker which was added to Jenkins or null if it was not added yet
+     */
+    NomadWorker getWorker() {
+        return worker;
+    }
+
+    void setWorker(NomadWorker worker) {
+        this.worker = worker;
+    }
+
+    void setTimeout(ScheduledFuture<?> timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Cancels the timeout of this launch (if any).
+     */
+    void cancelTimeout() {
+        ScheduledFuture<?> current = timeout;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.Timer;
+
+/**
+ * Launches the workers of a {@link NomadCloud}. Launches are queued and handled by a single drain task: the workers which are waiting are
+ * added to Jenkins in chunks (one queue lock per chunk) and then their jobs are registered at Nomad. Registrations are limited by a
+ * {@link NomadTokenBucket} and by a maximum number of requests in flight, so that a large burst goes out at a steady rate instead of
+ * flooding the Nomad leader. No thread waits for a token or a free slot: registrations which have to wait are scheduled on a timer or
+ * picked up as soon as a registration in flight is done.
+ */
+final class NomadLaunchPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadLaunchPipeline.class.getName());
+
+    /**
+     * Maximum number of workers which are added to Jenkins under a single queue lock.
+     */
+    static final int MAX_WORKERS_PER_LOCK = 50;
+
+    /**
+     * The stages of a launch, implemented by the cloud.
+     */
+    interface Stages {
+        /**
+         * Adds the workers of the given batches to Jenkins.
+         * @return the batches whose workers were added (batches which failed have to be failed by the implementation)
+         */
+        List<List<NomadLaunch>> addWorkers(List<List<NomadLaunch>> batches);
+
+        /**
+         * Registers the job of a given batch at Nomad. It is called on a thread of its own.
+         */
+        void startWorkers(List<NomadLaunch> batch);
+
+        /**
+         * Fails the launches of a given batch which never got to Nomad.
+         */
+        void failWorkers(List<NomadLaunch> batch, String message);
+    }
+
+    private final Stages stages;
+    private final Executor executor;
+    private final BiConsumer<Runnable, Long> scheduler;
+    private final NomadTokenBucket registrations;
+    private final Semaphore inFlight;
+    private final int maxRegistrations;
+    private final ConcurrentLinkedQueue<List<NomadLaunch>> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<List<NomadLaunch>> added = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * @param stages the stages of a launch
+     * @param executor executor of the drain task and of the registrations (registrations block while they wait for Nomad, so it should
+     * not be a shared pool)
+     * @param registrationRate maximum number of job registrations per second
+     * @param maxRegistrations maximum number of job registrations in flight
+     */
+    NomadLaunchPipeline(Stages stages, Executor executor, int registrationRate, int maxRegistrations) {
+        this(stages, executor, (task, delay) -> Timer.get().schedule(task, delay, TimeUnit.NANOSECONDS), registrationRate,
+                maxRegistrations);
+    }
+
+    /**
+     * @param scheduler runs a task after a delay in nanoseconds
+     */
+    NomadLaunchPipeline(Stages stages, Executor executor, BiConsumer<Runnable, Long> scheduler, int registrationRate,
+            int maxRegistrations) {
+        this.stages = stages;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.registrations = new NomadTokenBucket(registrationRate, registrationRate);
+        this.inFlight = new Semaphore(maxRegistrations);
+        this.maxRegistrations = maxRegistrations;
+    }
+
+    /**
+     * Queues the launches of a batch which share a single Nomad job (usually a single launch).
+     */
+    void submit(List<NomadLaunch> batch) {
+        queue.add(batch);
+        drain();
+    }
+
+    /**
+     * @return number of batches which wait to be added to Jenkins or to be registered at Nomad
+     */
+    int getQueueSize() {
+        return queue.size() + added.size();
+    }
+
+    /**
+     * @return number of job registrations in flight (including registrations which wait for a token)
+     */
+    int getInFlight() {
+        return maxRegistrations - inFlight.availablePermits();
+    }
+
+    private void drain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::run);
+        }
+    }
+
+    private void run() {
+        try {
+            List<List<NomadLaunch>> batches = poll();
+            while (!batches.isEmpty()) {
+                added.addAll(stages.addWorkers(batches));
+                register();
+                batches = poll();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Launch pipeline failed", e);
+        } finally {
+            draining.set(false);
+            if (!queue.isEmpty()) {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Starts the registration of added batches as long as there are free slots. Each registration takes a token right away and is
+     * delayed until the token is covered. It is called whenever a batch was added or a registration is done.
+     */
+    private void register() {
+        while (!added.isEmpty() && inFlight.tryAcquire()) {
+            List<NomadLaunch> batch = added.poll();
+            if (batch == null) {
+                inFlight.release();
+                continue;
+            }
+            long wait = registrations.reserve(System.nanoTime());
+            if (wait > 0) {
+                scheduler.accept(() -> start(batch), wait);
+            } else {
+                start(batch);
+            }
+        }
+    }
+
+    private void start(List<NomadLaunch> batch) {
+        try {
+            executor.execute(() -> {
+                try {
+                    stages.startWorkers(batch);
+                } finally {
+                    inFlight.release();
+                    register();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            stages.failWorkers(batch, "Unable to register the job: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the next waiting batches with {@link #MAX_WORKERS_PER_LOCK} workers at most (but at least one batch if there is any)
+     */
+    private List<List<NomadLaunch>> poll() {
+        List<List<NomadLaunch>> batches = new ArrayList<>();
+        int workers = 0;
+        while (workers < MAX_WORKERS_PER_LOCK) {
+            List<NomadLaunch> next = queue.peek();
+            if (next == null || (!batches.isEmpty() && workers + next.size() > MAX_WORKERS_PER_LOCK)) {
+                break;
+            }
+            // the drain task is the only consumer, so the head is still the same batch
+            batches.add(queue.poll());
+            workers += next.size();
+        }
+        return batches;
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All launches of a {@link NomadCloud} which are in flight (i.e. requested but not connected or failed yet), together with counters per
+ * template. The counters are updated exactly once per launch (when it is added and when it is removed), so that they never drift even if
+ * launches are added and removed by different threads concurrently.
+ */
+final class NomadLaunchRegistry {
+
+    /**
+     * Launches in flight of a single template.
+     */
+    private static final class Counters {
+        private final AtomicInteger planned = new AtomicInteger();
+        private final AtomicInteger warm = new AtomicInteger();
+
+        private AtomicInteger of(NomadLaunch launch) {
+            return launch.isPlanned() ? planned : warm;
+        }
+    }
+
+    private final Map<String, NomadLaunch> launches = new ConcurrentHashMap<>();
+    private final Map<NomadWorkerTemplate, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a new launch.
+     */
+    void add(NomadLaunch launch) {
+        if (launches.putIfAbsent(launch.getWorkerName(), launch) == null) {
+            counters(launch.getTemplate()).of(launch).incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the launch of a given worker.
+     * @return the removed launch or null if there is no launch of the worker (anymore)
+     */
+    NomadLaunch remove(String workerName) {
+        NomadLaunch launch = launches.remove(workerName);
+        if (launch != null) {
+            counters(launch.getTemplate()).of(launch).decrementAndGet();
+        }
+        return launch;
+    }
+
+    /**
+     * Removes a given launch.
+     * @return true if the launch was removed, false if it was removed already
+     */
+    boolean remove(NomadLaunch launch) {
+        if (launches.remove(launch.getWorkerName(), launch)) {
+            counters(launch.getTemplate()).of(launch).decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the worker with the given name is in flight
+     */
+    boolean contains(String workerName) {
+        return launches.containsKey(workerName);
+    }
+
+    /**
+     * @return all launches in flight
+     */
+    List<NomadLaunch> getLaunches() {
+        return new ArrayList<>(launches.values());
+    }
+
+    /**
+     * @return number of launches in flight which were requested by the NodeProvisioner for a given template
+     */
+    int getPlannedLaunches(NomadWorkerTemplate template) {
+        Counters c = counters.get(template);
+        return c != null ? c.planned.get() : 0;
+    }
+
+    /**
+     * @return number of warm pool launches in flight of a given template
+     */
+    int getWarmLaunches(NomadWorkerTemplate template) {
+        Counters c = counters.get(template);
+        return c != null ? c.warm.get() : 0;
+    }
+
+    /**
+     * @return number of executors of all launches in flight which were requested by the NodeProvisioner
+     */
+    int getPlannedExecutors() {
+        int executors = 0;
+        for (Map.Entry<NomadWorkerTemplate, Counters> entry : counters.entrySet()) {
+            executors += entry.getValue().planned.get() * entry.getKey().getNumExecutors();
+        }
+        return executors;
+    }
+
+    private Counters counters(NomadWorkerTemplate template) {
+        return counters.computeIfAbsent(template, t -> new Counters());
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jenkinsci.plugins.nomad.NomadLaunchTimeline.Milestone;
+import org.jenkinsci.plugins.nomad.NomadLaunchTimeline.Phase;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Latency histograms of the launch phases (see {@link NomadLaunchTimeline.Phase}) of all workers of a {@link NomadCloud}, broken down
+ * by template prefix.
+ */
+public final class NomadLaunchStats {
+
+    private final Map<String, Map<Phase, NomadLatencyHistogram>> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Records the duration of all phases of a given launch which end at a milestone between from and to (both inclusive). Phases with
+     * unknown milestones are skipped.
+     */
+    void record(String prefix, NomadLaunchTimeline timeline, Milestone from, Milestone to) {
+        Map<Phase, NomadLatencyHistogram> histograms = templates.computeIfAbsent(prefix, p -> {
+            Map<Phase, NomadLatencyHistogram> map = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) {
+                map.put(phase, new NomadLatencyHistogram());
+            }
+            return map;
+        });
+        for (Phase phase : Phase.values()) {
+            if (phase.getTo().compareTo(from) < 0 || phase.getTo().compareTo(to) > 0) {
+                continue;
+            }
+            long duration = timeline.getDuration(phase);
+            if (duration >= 0) {
+                histograms.get(phase).record(duration);
+            }
+        }
+    }
+
+    /**
+     * @return histograms of all phases by template prefix (sorted by prefix)
+     */
+    public Map<String, Map<Phase, NomadLatencyHistogram>> getTemplates() {
+        return Collections.unmodifiableMap(new TreeMap<>(templates));
+    }
+
+    /**
+     * @return the histogram of a given phase of a given template or null if no launch of the template was recorded yet
+     */
+    public NomadLatencyHistogram get(String prefix, Phase phase) {
+        Map<Phase, NomadLatencyHistogram> histograms = templates.get(prefix);
+        return histograms != null ? histograms.get(phase) : null;
+    }
+
+    /**
+     * @return the histograms of all templates and phases in JSON format
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        getTemplates().forEach((prefix, histograms) -> {
+            JsonObject phases = new JsonObject();
+            histograms.forEach((phase, histogram) -> phases.add(phase.name().toLowerCase(Locale.ROOT), histogram.toJson()));
+            json.add(prefix, phases);
+        });
+        return json;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Points in time a single worker passed on its way from the build queue to running its first task. Milestones which were not observed
+ * (e.g. no event stream or a warm pool launch without a queue item) stay unset.
+ */
+public final class NomadLaunchTimeline {
+
+    /**
+     * Points in time of a launch, in the order they are passed.
+     */
+    public enum Milestone {
+        /** the (oldest) build waiting for the label entered the queue */
+        QUEUED,
+        /** the cloud was asked to provision the worker */
+        PROVISIONED,
+        /** Nomad accepted the job */
+        REGISTERED,
+        /** Nomad placed the allocation on a client */
+        PLACED,
+        /** the task of the allocation is running */
+        STARTED,
+        /** the agent connected to Jenkins */
+        CONNECTED,
+        /** the agent accepted its first task */
+        FIRST_TASK
+    }
+
+    /**
+     * Durations between two milestones.
+     */
+    public enum Phase {
+        QUEUE("Queue", Milestone.QUEUED, Milestone.PROVISIONED),
+        REGISTRATION("Job registration", Milestone.PROVISIONED, Milestone.REGISTERED),
+        PLACEMENT("Allocation placement", Milestone.REGISTERED, Milestone.PLACED),
+        STARTUP("Task startup", Milestone.PLACED, Milestone.STARTED),
+        CONNECTION("Agent connection", Milestone.STARTED, Milestone.CONNECTED),
+        FIRST_TASK("First task", Milestone.CONNECTED, Milestone.FIRST_TASK),
+        LAUNCH("Provisioned to connected", Milestone.PROVISIONED, Milestone.CONNECTED),
+        TOTAL("Queued to first task", Milestone.QUEUED, Milestone.FIRST_TASK);
+
+        private final String displayName;
+        private final Milestone from;
+        private final Milestone to;
+
+        Phase(String displayName, Milestone from, Milestone to) {
+            this.displayName = displayName;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public Milestone getFrom() {
+            return from;
+        }
+
+        public Milestone getTo() {
+            return to;
+        }
+    }
+
+    private final AtomicLongArray timestamps = new AtomicLongArray(Milestone.values().length);
+
+    /**
+     * Records that a given milestone was passed right now.
+     * @return true if the milestone was not recorded before
+     */
+    boolean mark(Milestone milestone) {
+        return mark(milestone, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a given milestone was passed at a given time. Only the first time is kept.
+     * @param timestamp milliseconds since epoch, values &lt;= 0 are ignored
+     * @return true if the milestone was not recorded before
+     */
+    boolean mark(Milestone milestone, long timestamp) {
+        return timestamp > 0 && timestamps.compareAndSet(milestone.ordinal(), 0, timestamp);
+    }
+
+    /**
+     * @return milliseconds since epoch or 0 if the milestone was not passed (yet)
+     */
+    public long get(Milestone milestone) {
+        return timestamps.get(milestone.ordinal());
+    }
+
+    /**
+     * @return duration of a given phase in milliseconds or -1 if one of its milestones is unknown
+     */
+    public long getDuration(Phase phase) {
+        long from = get(phase.from);
+        long to = get(phase.to);
+        if (from == 0 || to == 0) {
+            return -1;
+        }
+        return Math.max(to - from, 0);
+    }
+
+}
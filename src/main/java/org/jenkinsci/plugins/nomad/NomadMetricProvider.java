@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.slaves.Cloud;
+import jenkins.metrics.api.MetricProvider;
+import jenkins.model.Jenkins;
+
+/**
+ * Publishes the {@link NomadApiMetrics} and {@link NomadLaunchStats} of all Nomad clouds via the Metrics plugin (only loaded when the
+ * Metrics plugin is installed). Counters are summed up over all clouds (and templates), latency percentiles are the maximum of all clouds
+ * (and templates).
+ */
+@Extension(optional = true)
+public class NomadMetricProvider extends MetricProvider {
+
+    private final MetricSet metricSet;
+
+    public NomadMetricProvider() {
+        Map<String, Metric> metrics = new HashMap<>();
+        for (NomadApiMetrics.Endpoint endpoint : NomadApiMetrics.Endpoint.values()) {
+            String prefix = MetricRegistry.name("nomad", "api", endpoint.getDisplayName().replace('/', '.'));
+            metrics.put(MetricRegistry.name(prefix, "requests"), sum(endpoint, NomadApiMetrics.EndpointMetrics::getRequests));
+            metrics.put(MetricRegistry.name(prefix, "successes"), sum(endpoint, NomadApiMetrics.EndpointMetrics::getSuccesses));
+            metrics.put(MetricRegistry.name(prefix, "failures"), sum(endpoint, NomadApiMetrics.EndpointMetrics::getFailures));
+            metrics.put(MetricRegistry.name(prefix, "retries"), sum(endpoint, NomadApiMetrics.EndpointMetrics::getRetries));
+            metrics.put(MetricRegistry.name(prefix, "bytes", "sent"), sum(endpoint, NomadApiMetrics.EndpointMetrics::getBytesSent));
+            metrics.put(MetricRegistry.name(prefix, "bytes", "received"), sum(endpoint, NomadApiMetrics.EndpointMetrics::getBytesReceived));
+            metrics.put(MetricRegistry.name(prefix, "latency", "p50"), max(endpoint, m -> m.getLatency().getPercentile(0.5)));
+            metrics.put(MetricRegistry.name(prefix, "latency", "p95"), max(endpoint, m -> m.getLatency().getPercentile(0.95)));
+            metrics.put(MetricRegistry.name(prefix, "latency", "p99"), max(endpoint, m -> m.getLatency().getPercentile(0.99)));
+        }
+        for (NomadLaunchTimeline.Phase phase : NomadLaunchTimeline.Phase.values()) {
+            String prefix = MetricRegistry.name("nomad", "provisioning", phase.name().toLowerCase(Locale.ROOT));
+            metrics.put(MetricRegistry.name(prefix, "count"), sumPhase(phase, NomadLatencyHistogram::getCount));
+            metrics.put(MetricRegistry.name(prefix, "p50"), maxPhase(phase, h -> h.getPercentile(0.5)));
+            metrics.put(MetricRegistry.name(prefix, "p95"), maxPhase(phase, h -> h.getPercentile(0.95)));
+            metrics.put(MetricRegistry.name(prefix, "p99"), maxPhase(phase, h -> h.getPercentile(0.99)));
+        }
+        Map<String, Metric> unmodifiable = Collections.unmodifiableMap(metrics);
+        this.metricSet = new MetricSet() {
+            @Override
+            public Map<String, Metric> getMetrics() {
+                return unmodifiable;
+            }
+        };
+    }
+
+    @NonNull
+    @Override
+    public MetricSet getMetricSet() {
+        return metricSet;
+    }
+
+    private static Gauge<Long> sum(NomadApiMetrics.Endpoint endpoint, ToLongFunction<NomadApiMetrics.EndpointMetrics> value) {
+        return () -> {
+            long sum = 0;
+            for (NomadApiMetrics metrics : allMetrics()) {
+                sum += value.applyAsLong(metrics.get(endpoint));
+            }
+            return sum;
+        };
+    }
+
+    private static Gauge<Long> max(NomadApiMetrics.Endpoint endpoint, ToLongFunction<NomadApiMetrics.EndpointMetrics> value) {
+        return () -> {
+            long max = 0;
+            for (NomadApiMetrics metrics : allMetrics()) {
+                max = Math.max(max, value.applyAsLong(metrics.get(endpoint)));
+            }
+            return max;
+        };
+    }
+
+    private static Gauge<Long> sumPhase(NomadLaunchTimeline.Phase phase, ToLongFunction<NomadLatencyHistogram> value) {
+        return () -> {
+            long sum = 0;
+            for (NomadLatencyHistogram histogram : allHistograms(phase)) {
+                sum += value.applyAsLong(histogram);
+            }
+            return sum;
+        };
+    }
+
+    private static Gauge<Long> maxPhase(NomadLaunchTimeline.Phase phase, ToLongFunction<NomadLatencyHistogram> value) {
+        return () -> {
+            long max = 0;
+            for (NomadLatencyHistogram histogram : allHistograms(phase)) {
+                max = Math.max(max, value.applyAsLong(histogram));
+            }
+            return max;
+        };
+    }
+
+    private static List<NomadApiMetrics> allMetrics() {
+        List<NomadApiMetrics> metrics = new ArrayList<>();
+        for (NomadCloud cloud : allClouds()) {
+            metrics.add(cloud.nomad().metrics());
+        }
+        return metrics;
+    }
+
+    private static List<NomadLatencyHistogram> allHistograms(NomadLaunchTimeline.Phase phase) {
+        List<NomadLatencyHistogram> histograms = new ArrayList<>();
+        for (NomadCloud cloud : allClouds()) {
+            cloud.launchStats().getTemplates().values().forEach(phases -> histograms.add(phases.get(phase)));
+        }
+        return histograms;
+    }
+
+    private static List<NomadCloud> allClouds() {
+        List<NomadCloud> clouds = new ArrayList<>();
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            for (Cloud cloud : jenkins.clouds) {
+                if (cloud instanceof NomadCloud) {
+                    clouds.add((NomadCloud) cloud);
+                }
+            }
+        }
+        return clouds;
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.google.gson.JsonObject;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+/**
+ * Provides the metrics of all Nomad clouds in JSON format at /nomad-metrics (e.g. for scraping them without the Metrics plugin).
+ *
+ * @see NomadApiMetrics
+ */
+@Extension
+public class NomadMetricsAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "nomad-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (PrintWriter writer = rsp.getWriter()) {
+            writer.write(NomadApi.GSON.toJson(toJson()));
+        }
+    }
+
+    /**
+     * @return metrics of all Nomad clouds by cloud name
+     */
+    static JsonObject toJson() {
+        JsonObject clouds = new JsonObject();
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof NomadCloud) {
+                NomadCloud nomadCloud = (NomadCloud) cloud;
+                JsonObject json = new JsonObject();
+                json.add("api", nomadCloud.nomad().metrics().toJson());
+                json.add("provisioning", nomadCloud.launchStats().toJson());
+                json.add("capacity", nomadCloud.capacity().toJson());
+                JsonObject pipeline = new JsonObject();
+                pipeline.addProperty("queued", nomadCloud.pipeline().getQueueSize());
+                pipeline.addProperty("inFlight", nomadCloud.pipeline().getInFlight());
+                json.add("registrations", pipeline);
+                JsonObject connections = new JsonObject();
+                connections.addProperty("active", nomadCloud.nomad().getActiveConnectionCount());
+                connections.addProperty("idle", nomadCloud.nomad().getIdleConnectionCount());
+                json.add("connections", connections);
+                clouds.add(nomadCloud.name, json);
+            }
+        }
+        JsonObject json = new JsonObject();
+        json.add("clouds", clouds);
+        return json;
+    }
+
+}
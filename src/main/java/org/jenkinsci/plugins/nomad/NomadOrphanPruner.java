@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+/**
+ * Stops orphaned Nomad workers (see {@link NomadCloud#pruneOrphanedWorkers()}) in the background, so that pruning does not slow down
+ * provisioning. Every cloud is pruned according to its own interval and only one run is active at a time. Jobs which could not be stopped
+ * by the {@link NomadTerminator} are retried on every run.
+ */
+@Extension
+public class NomadOrphanPruner extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadOrphanPruner.class.getName());
+
+    private final Map<NomadCloud, Long> lastRuns = new WeakHashMap<>();
+
+    public NomadOrphanPruner() {
+        super("Nomad orphan pruner");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        long now = System.currentTimeMillis();
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (!(cloud instanceof NomadCloud)) {
+                continue;
+            }
+            NomadCloud nomadCloud = (NomadCloud) cloud;
+            nomadCloud.terminator().retryFailed();
+            if (!nomadCloud.isPrune()) {
+                continue;
+            }
+            Long lastRun = lastRuns.get(nomadCloud);
+            if (lastRun != null && now - lastRun < TimeUnit.MINUTES.toMillis(nomadCloud.getPruneInterval())) {
+                continue;
+            }
+            lastRuns.put(nomadCloud, now);
+            try {
+                nomadCloud.pruneOrphanedWorkers();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Pruning of cloud " + nomadCloud.getName() + " failed", e);
+            }
+        }
+    }
+
+}
@@ -13,7 +13,9 @@ import hudson.model.queue.QueueListener;
 import hudson.slaves.CloudProvisioningListener;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,54 +36,174 @@ public class NomadProvisioningStrategy extends NodeProvisioner.Strategy {
     private static final Logger LOGGER = getLogger(NomadProvisioningStrategy.class.getName());
 
     /**
-     * Do asap provisioning
+     * Do asap provisioning. The excess workload is split across all Nomad clouds which can provision the label, weighted by their free
+     * capacity and their expected startup time.
      */
     @NonNull
     @Override
     public NodeProvisioner.StrategyDecision apply(@NonNull NodeProvisioner.StrategyState strategyState) {
         final Label label = strategyState.getLabel();
         LoadStatisticsSnapshot snapshot = strategyState.getSnapshot();
-        for (Cloud nomadCloud : Jenkins.get().clouds) {
-            if (nomadCloud instanceof NomadCloud) {
+        List<NomadCloud> clouds = new ArrayList<>();
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof NomadCloud && cloud.canProvision(new Cloud.CloudState(label, 0))) {
+                clouds.add((NomadCloud) cloud);
+            }
+        }
+        if (clouds.isEmpty()) {
+            LOGGER.log(Level.FINE, "Provisioning not complete, consulting remaining strategies");
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
 
-                LOGGER.log(Level.FINE,
-                        "Available executors={0} connecting executors={1} AdditionalPlannedCapacity={2} pending ={3}",
-                        new Object[] { snapshot.getAvailableExecutors(), snapshot.getConnectingExecutors(),
-                                strategyState.getAdditionalPlannedCapacity(), ((NomadCloud) nomadCloud).getPending() });
-                int availableCapacity = snapshot.getAvailableExecutors() +
-                        snapshot.getConnectingExecutors() +
-                        strategyState.getAdditionalPlannedCapacity() +
-                        strategyState.getPlannedCapacitySnapshot();
-                int previousCapacity = availableCapacity;
-                int currentDemand = snapshot.getQueueLength();
+        // launches requested by the NodeProvisioner are part of the planned capacity already, only warm pool launches are added
+        int warmCapacity = 0;
+        for (NomadCloud cloud : clouds) {
+            warmCapacity += getWarmCapacity(cloud, label);
+        }
+        LOGGER.log(Level.FINE,
+                "Available executors={0} connecting executors={1} AdditionalPlannedCapacity={2} PlannedCapacity={3} warm={4}",
+                new Object[] { snapshot.getAvailableExecutors(), snapshot.getConnectingExecutors(),
+                        strategyState.getAdditionalPlannedCapacity(), strategyState.getPlannedCapacitySnapshot(), warmCapacity });
+        int availableCapacity = snapshot.getAvailableExecutors() +
+                snapshot.getConnectingExecutors() +
+                strategyState.getAdditionalPlannedCapacity() +
+                strategyState.getPlannedCapacitySnapshot() +
+                warmCapacity;
+        int previousCapacity = availableCapacity;
+        int currentDemand = snapshot.getQueueLength();
+        int excessWorkload = currentDemand - availableCapacity;
+        for (NomadCloud cloud : clouds) {
+            if (cloud.isPredictiveProvisioning()) {
+                excessWorkload = Math.max(excessWorkload, getPredictedWorkload(cloud, label, snapshot, availableCapacity));
+            }
+        }
 
-                LOGGER.log(Level.FINE, "Available capacity=" + availableCapacity + " currentDemand=" + currentDemand);
+        LOGGER.log(Level.FINE, "Available capacity=" + availableCapacity + " currentDemand=" + currentDemand
+                + " excessWorkload=" + excessWorkload);
 
-                if (availableCapacity < currentDemand) {
-                    Collection<PlannedNode> plannedNodes = nomadCloud.provision(label,
-                            currentDemand - availableCapacity);
-                    LOGGER.log(Level.FINE, "Planned " + plannedNodes.size() + " new nodes");
-                    fireOnStarted(nomadCloud, strategyState.getLabel(), plannedNodes);
-                    strategyState.recordPendingLaunches(plannedNodes);
-                    availableCapacity += plannedNodes.size();
-                    LOGGER.log(Level.FINE, "After provisioning, available capacity=" + availableCapacity
-                            + " currentDemand=" + currentDemand);
+        if (excessWorkload > 0) {
+            int[] capacity = new int[clouds.size()];
+            long[] startupTime = new long[clouds.size()];
+            for (int i = 0; i < clouds.size(); i++) {
+                NomadCloud cloud = clouds.get(i);
+                NomadWorkerTemplate template = cloud.getTemplate(label);
+                long freeExecutors = (long) Math.min(cloud.getFreeInstances(), cloud.getFreeInstances(template)) * template.getNumExecutors();
+                capacity[i] = (int) Math.min(freeExecutors, excessWorkload);
+                startupTime[i] = cloud.getExpectedStartupTime(template);
+            }
+            int[] workload = split(excessWorkload, capacity, startupTime);
+            for (int i = 0; i < clouds.size(); i++) {
+                if (workload[i] <= 0) {
+                    continue;
+                }
+                NomadCloud cloud = clouds.get(i);
+                Collection<PlannedNode> plannedNodes = cloud.provision(label, workload[i]);
+                LOGGER.log(Level.FINE, "Planned " + plannedNodes.size() + " new nodes on cloud " + cloud.getName());
+                fireOnStarted(cloud, strategyState.getLabel(), plannedNodes);
+                strategyState.recordPendingLaunches(plannedNodes);
+                for (PlannedNode plannedNode : plannedNodes) {
+                    availableCapacity += plannedNode.numExecutors;
                 }
-                if (availableCapacity > previousCapacity && label != null) {
-                    LOGGER.log(Level.FINE, "Suggesting NodeProvisioner review");
-                    Timer.get().schedule(label.nodeProvisioner::suggestReviewNow, 1L, TimeUnit.SECONDS);
+            }
+            LOGGER.log(Level.FINE, "After provisioning, available capacity=" + availableCapacity
+                    + " currentDemand=" + currentDemand);
+        }
+        if (availableCapacity > previousCapacity && label != null) {
+            LOGGER.log(Level.FINE, "Suggesting NodeProvisioner review");
+            Timer.get().schedule(label.nodeProvisioner::suggestReviewNow, 1L, TimeUnit.SECONDS);
+        }
+        if (availableCapacity >= currentDemand) {
+            LOGGER.log(Level.FINE, "Provisioning completed");
+            return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
+        } else {
+            LOGGER.log(Level.FINE, "Provisioning not complete, consulting remaining strategies");
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
+    }
+
+    /**
+     * Splits a workload across several clouds. The weight of a cloud is its free capacity divided by its expected startup time, so that
+     * clouds with more room and faster workers get a larger share. No cloud gets more than its free capacity, the workload which does not
+     * fit in any cloud is left over.
+     *
+     * @param workload number of executors which are missing
+     * @param capacity number of executors each cloud can still provide
+     * @param startupTime expected startup time of each cloud in milliseconds
+     * @return number of executors per cloud
+     */
+    static int[] split(int workload, int[] capacity, long[] startupTime) {
+        int[] result = new int[capacity.length];
+        double[] weight = new double[capacity.length];
+        for (int i = 0; i < capacity.length; i++) {
+            weight[i] = Math.max(capacity[i], 0) / (double) Math.max(startupTime[i], 1);
+        }
+        int remaining = workload;
+        while (remaining > 0) {
+            double totalWeight = 0;
+            int best = -1;
+            for (int i = 0; i < capacity.length; i++) {
+                if (result[i] < capacity[i]) {
+                    totalWeight += weight[i];
+                    if (best < 0 || weight[i] > weight[best]) {
+                        best = i;
+                    }
                 }
-                if (availableCapacity >= currentDemand) {
-                    LOGGER.log(Level.FINE, "Provisioning completed");
-                    return NodeProvisioner.StrategyDecision.PROVISIONING_COMPLETED;
-                } else {
-                    LOGGER.log(Level.FINE, "Provisioning not complete, consulting remaining strategies");
-                    return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+            }
+            if (best < 0) {
+                break;
+            }
+            int assigned = 0;
+            for (int i = 0; i < capacity.length; i++) {
+                if (result[i] < capacity[i]) {
+                    int share = (int) Math.min(Math.floor(remaining * weight[i] / totalWeight), capacity[i] - result[i]);
+                    result[i] += share;
+                    assigned += share;
                 }
             }
+            if (assigned == 0) {
+                // the rest is smaller than the number of clouds, it goes to the cloud with the highest weight
+                result[best]++;
+                assigned = 1;
+            }
+            remaining -= assigned;
         }
-        LOGGER.log(Level.FINE, "Provisioning not complete, consulting remaining strategies");
-        return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        return result;
+    }
+
+    /**
+     * Feeds the demand forecast of the label and predicts the workload which is missing when a worker which is provisioned now is
+     * connected. The prediction exceeds the current excess workload by {@link NomadCloud#getPredictiveHeadroom()} at most.
+     *
+     * @return the predicted excess workload (0 if the demand does not grow)
+     */
+    private static int getPredictedWorkload(NomadCloud cloud, Label label, LoadStatisticsSnapshot snapshot, int availableCapacity) {
+        NomadWorkerTemplate template = cloud.getTemplate(label);
+        if (template == null) {
+            return 0;
+        }
+        String key = label == null ? "" : label.getExpression();
+        int demand = snapshot.getBusyExecutors() + snapshot.getQueueLength();
+        cloud.forecaster().observe(key, demand, System.currentTimeMillis());
+        double forecast = cloud.forecaster().forecast(key, cloud.getExpectedStartupTime(template) / 1000.0);
+        int predicted = (int) Math.ceil(forecast) - snapshot.getBusyExecutors() - availableCapacity;
+        int current = Math.max(0, snapshot.getQueueLength() - availableCapacity);
+        int workload = Math.min(predicted, current + cloud.getPredictiveHeadroom());
+        if (workload > current) {
+            LOGGER.log(Level.FINE, "Demand of label " + key + " is expected to grow to " + forecast + ", provisioning "
+                    + (workload - current) + " executors ahead");
+        }
+        return Math.max(0, workload);
+    }
+
+    /**
+     * Warm pool launches are not known to the NodeProvisioner (they are no planned nodes), but they will serve the label as soon as they
+     * are connected. Counting them avoids provisioning a second worker for the same demand.
+     *
+     * @return number of executors of the warm pool launches in flight which match the given label
+     */
+    private static int getWarmCapacity(NomadCloud cloud, Label label) {
+        NomadWorkerTemplate template = cloud.getTemplate(label);
+        return template != null ? cloud.launches().getWarmLaunches(template) * template.getNumExecutors() : 0;
     }
 
     /**
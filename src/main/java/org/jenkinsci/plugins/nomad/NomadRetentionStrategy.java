@@ -1,11 +1,26 @@
 package org.jenkinsci.plugins.nomad;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import hudson.model.Descriptor;
+import hudson.slaves.AbstractCloudComputer;
 import hudson.slaves.CloudRetentionStrategy;
 import hudson.slaves.RetentionStrategy;
 
 public class NomadRetentionStrategy extends CloudRetentionStrategy {
 
+    private static final Logger LOGGER = Logger.getLogger(NomadRetentionStrategy.class.getName());
+
+    /**
+     * Time an idle worker above {@link NomadWorkerTemplate#getMaxIdle()} is kept before it is terminated. It is independent of
+     * {@link NomadWorkerTemplate#getIdleTerminationInMinutes()}, so that excess workers go away quickly, but it gives a worker which just
+     * finished a build the chance to pick up the next one.
+     */
+    static final int EXCESS_IDLE_MINUTES = 1;
+
     public NomadRetentionStrategy(int idleMinutes) {
         super(idleMinutes);
     }
@@ -14,6 +29,38 @@ public class NomadRetentionStrategy extends CloudRetentionStrategy {
         super(Integer.parseInt(idleMinutes));
     }
 
+    /**
+     * Keeps idle workers alive as long as the warm pool of their template would drop below {@link NomadWorkerTemplate#getMinIdle()} and
+     * terminates idle workers right away when there are more than {@link NomadWorkerTemplate#getMaxIdle()}.
+     */
+    @Override
+    public long check(AbstractCloudComputer c) {
+        if (c instanceof NomadComputer && c.isOnline() && c.isIdle() && c.isAcceptingTasks()) {
+            NomadWorker worker = ((NomadComputer) c).getNode();
+            NomadCloud cloud = worker != null ? worker.getCloud() : null;
+            NomadWorkerTemplate template = cloud != null ? cloud.getTemplateOf(worker) : null;
+
+            if (template != null && (template.getMinIdle() > 0 || template.getMaxIdle() > 0)) {
+                int idle = cloud.countIdleWorkers(template);
+                if (idle <= template.getMinIdle()) {
+                    return 1;
+                }
+                long idleMilliseconds = System.currentTimeMillis() - c.getIdleStartMilliseconds();
+                if (template.getMaxIdle() > 0 && idle > template.getMaxIdle() && idleMilliseconds > TimeUnit.MINUTES.toMillis(EXCESS_IDLE_MINUTES)) {
+                    LOGGER.log(Level.INFO, "Terminating " + c.getName() + ", " + idle + " workers are idle but only "
+                            + template.getMaxIdle() + " are allowed");
+                    try {
+                        worker.terminate();
+                    } catch (InterruptedException | IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to terminate " + c.getName(), e);
+                    }
+                    return 1;
+                }
+            }
+        }
+        return super.check(c);
+    }
+
     public static class DescriptorImpl extends Descriptor<RetentionStrategy<?>> {
         @Override
         public String getDisplayName() {
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed Nomad API call is retried and how long to wait before. Every kind of operation has its own number of attempts
+ * and backoff. Additionally, all operations share a retry budget (see gRPC retry throttling): every retry costs a token and every
+ * successful call earns a tenth of a token back, so that retries stop as soon as Nomad fails constantly instead of multiplying the load.
+ */
+final class NomadRetryPolicy {
+
+    private static final double MAX_TOKENS = 10;
+    private static final double TOKENS_PER_SUCCESS = 0.1;
+
+    /**
+     * Operations with their retry settings.
+     */
+    enum Operation {
+        REGISTER(4, 500, 4000),
+        DISPATCH(4, 500, 4000),
+        STOP(2, 500, 2000),
+        /** Stop requests of the {@link NomadTerminator} which are retried by the terminator itself */
+        TERMINATE(1, 500, 2000),
+        LIST(3, 500, 4000),
+        PARSE(3, 500, 4000),
+        PLAN(2, 500, 2000);
+
+        private final int maxAttempts;
+        private final long initialDelay;
+        private final long maxDelay;
+
+        Operation(int maxAttempts, long initialDelay, long maxDelay) {
+            this.maxAttempts = maxAttempts;
+            this.initialDelay = initialDelay;
+            this.maxDelay = maxDelay;
+        }
+
+        int getMaxAttempts() {
+            return maxAttempts;
+        }
+    }
+
+    private double tokens = MAX_TOKENS;
+
+    /**
+     * Checks whether another attempt is allowed and takes a token from the retry budget if so.
+     * @param operation Operation which failed
+     * @param attempt Number of attempts made so far (starting with 1)
+     * @return true if the operation should be retried
+     */
+    synchronized boolean shouldRetry(Operation operation, int attempt) {
+        if (attempt >= operation.maxAttempts || tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Earns back a part of a token for a successful call.
+     */
+    synchronized void recordSuccess() {
+        tokens = Math.min(MAX_TOKENS, tokens + TOKENS_PER_SUCCESS);
+    }
+
+    /**
+     * @return time in milliseconds to wait before the next attempt (exponential backoff with jitter)
+     */
+    static long delay(Operation operation, int attempt) {
+        long delay = Math.min(operation.initialDelay << Math.min(attempt - 1, 16), operation.maxDelay);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    synchronized double getTokens() {
+        return tokens;
+    }
+
+}
@@ -0,0 +1,310 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Stops the Nomad jobs of terminated {@link NomadWorker}s in the background, so that removing a node from Jenkins never waits for the
+ * Nomad API. Stop requests are queued per namespace and region and only a few of them are sent concurrently to the same namespace and
+ * region. Failed requests are retried with an exponential backoff by the terminator alone (the Nomad API makes a single attempt per
+ * request). Jobs which could not be stopped at all are stored in the Jenkins home directory and retried by the {@link NomadOrphanPruner}.
+ */
+public final class NomadTerminator {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadTerminator.class.getName());
+    private static final int THREADS = 4;
+    private static final int MAX_QUEUED = 1000;
+    private static final int MAX_CONCURRENT_PER_SCOPE = 2;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    /**
+     * A single job (or a single task group of a bulk job) which should be stopped.
+     */
+    public static final class StopRequest {
+        private final String jobId;
+        private final String taskGroup;
+        private final String namespace;
+        private final String region;
+        private transient int attempts;
+
+        StopRequest(String jobId, String taskGroup, String namespace, String region) {
+            this.jobId = jobId;
+            this.taskGroup = taskGroup;
+            this.namespace = namespace;
+            this.region = region;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        /**
+         * @return the task group which should be scaled down or null if the whole job should be stopped
+         */
+        public String getTaskGroup() {
+            return taskGroup;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        private String getScope() {
+            return namespace + "@" + region;
+        }
+
+        private String getKey() {
+            return taskGroup == null ? jobId : jobId + "/" + taskGroup;
+        }
+    }
+
+    private final NomadCloud cloud;
+    private final int maxAttempts;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Deque<StopRequest>> queues = new LinkedHashMap<>();
+    private final Map<String, Integer> active = new LinkedHashMap<>();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+    private Map<String, StopRequest> failed;
+
+    NomadTerminator(NomadCloud cloud) {
+        this(cloud, MAX_ATTEMPTS);
+    }
+
+    NomadTerminator(NomadCloud cloud, int maxAttempts) {
+        this.cloud = cloud;
+        this.maxAttempts = maxAttempts;
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Nomad terminator [" + cloud.getName() + "]"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the stop of a given job and returns immediately.
+     * @param jobId ID of the Nomad job (e.g. jenkins-1234)
+     * @param namespace Name of the nomad namespace where job is running
+     * @param region Name of the region where job is running
+     */
+    public void stop(String jobId, String namespace, String region) {
+        submit(new StopRequest(jobId, null, namespace, region));
+    }
+
+    /**
+     * Queues the scale down of a single task group of a bulk job and returns immediately.
+     * @param jobId ID of the Nomad job (e.g. jenkins-batch-1234)
+     * @param taskGroup Name of the task group (e.g. jenkins-1234)
+     * @param namespace Name of the nomad namespace where job is running
+     * @param region Name of the region where job is running
+     */
+    public void scaleDown(String jobId, String taskGroup, String namespace, String region) {
+        submit(new StopRequest(jobId, taskGroup, namespace, region));
+    }
+
+    /**
+     * Queues all jobs again which could not be stopped so far.
+     */
+    public void retryFailed() {
+        List<StopRequest> requests;
+        synchronized (this) {
+            requests = new ArrayList<>(failed().values());
+        }
+        for (StopRequest request : requests) {
+            LOGGER.log(Level.FINE, "Retrying to stop job " + request.getKey());
+            request.attempts = 0;
+            submit(request);
+        }
+    }
+
+    /**
+     * @return all jobs which could not be stopped so far
+     */
+    public synchronized List<StopRequest> getFailed() {
+        return Collections.unmodifiableList(new ArrayList<>(failed().values()));
+    }
+
+    /**
+     * @return number of jobs which are queued or currently stopped
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    private void submit(StopRequest request) {
+        if (!queued.add(request.getKey())) {
+            LOGGER.log(Level.FINE, "Stop of job " + request.getKey() + " is already queued");
+            return;
+        }
+        if (size.incrementAndGet() > MAX_QUEUED) {
+            size.decrementAndGet();
+            queued.remove(request.getKey());
+            LOGGER.log(Level.WARNING, "Termination queue of cloud " + cloud.getName() + " is full, job " + request.getKey()
+                    + " will be stopped later");
+            recordFailure(request);
+            return;
+        }
+        synchronized (this) {
+            queues.computeIfAbsent(request.getScope(), scope -> new ArrayDeque<>()).add(request);
+        }
+        drain(request.getScope());
+    }
+
+    /**
+     * Hands queued requests of a given namespace and region to the executor as long as the concurrency limit allows it.
+     */
+    private void drain(String scope) {
+        List<StopRequest> next = new ArrayList<>();
+        synchronized (this) {
+            Deque<StopRequest> queue = queues.get(scope);
+            int running = active.getOrDefault(scope, 0);
+            while (queue != null && !queue.isEmpty() && running < MAX_CONCURRENT_PER_SCOPE) {
+                next.add(queue.poll());
+                running++;
+            }
+            active.put(scope, running);
+            if (queue != null && queue.isEmpty()) {
+                queues.remove(scope);
+            }
+            if (running == 0) {
+                active.remove(scope);
+            }
+        }
+        for (StopRequest request : next) {
+            try {
+                executor.execute(() -> execute(request));
+            } catch (RejectedExecutionException e) {
+                recordFailure(request);
+                done(request);
+            }
+        }
+    }
+
+    private void execute(StopRequest request) {
+        try {
+            boolean stopped = false;
+            try {
+                LOGGER.log(Level.FINE, "Stopping job " + request.getKey() + " in namespace '" + request.getNamespace() + "' in region '"
+                        + request.getRegion() + "'");
+                stopped = request.getTaskGroup() != null
+                        ? cloud.nomad().scaleDownWorker(request.getJobId(), request.getTaskGroup(), request.getNamespace(),
+                                request.getRegion(), NomadRetryPolicy.Operation.TERMINATE)
+                        : cloud.nomad().stopWorker(request.getJobId(), request.getNamespace(), request.getRegion(),
+                                NomadRetryPolicy.Operation.TERMINATE);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unable to stop job " + request.getKey(), e);
+            }
+
+            if (stopped) {
+                recordSuccess(request);
+            } else if (++request.attempts < maxAttempts) {
+                long delay = Math.min(INITIAL_RETRY_DELAY << (request.attempts - 1), MAX_RETRY_DELAY);
+                delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                LOGGER.log(Level.FINE, "Stop of job " + request.getKey() + " failed, retrying in " + delay + " ms");
+                Timer.get().schedule(() -> submit(request), delay, TimeUnit.MILLISECONDS);
+            } else {
+                LOGGER.log(Level.WARNING, "Unable to stop job " + request.getKey() + " after " + request.attempts + " attempts");
+                recordFailure(request);
+            }
+        } finally {
+            done(request);
+        }
+    }
+
+    /**
+     * Releases the slot of a finished request and starts the next request of the same namespace and region.
+     */
+    private void done(StopRequest request) {
+        synchronized (this) {
+            active.computeIfPresent(request.getScope(), (scope, running) -> running > 1 ? running - 1 : null);
+        }
+        queued.remove(request.getKey());
+        size.decrementAndGet();
+        drain(request.getScope());
+    }
+
+    private synchronized void recordSuccess(StopRequest request) {
+        if (failed().remove(request.getKey()) != null) {
+            save();
+        }
+    }
+
+    private synchronized void recordFailure(StopRequest request) {
+        failed().put(request.getKey(), request);
+        save();
+    }
+
+    /**
+     * @return jobs which could not be stopped, loaded from disk on first access
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, StopRequest> failed() {
+        if (failed == null) {
+            failed = new LinkedHashMap<>();
+            XmlFile file = getFile();
+            if (file != null && file.exists()) {
+                try {
+                    for (StopRequest request : (List<StopRequest>) file.read()) {
+                        failed.put(request.getKey(), request);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unable to load failed stop requests from " + file, e);
+                }
+            }
+        }
+        return failed;
+    }
+
+    private void save() {
+        XmlFile file = getFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            if (failed.isEmpty()) {
+                file.delete();
+            } else {
+                file.write(new ArrayList<>(failed.values()));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to save failed stop requests to " + file, e);
+        }
+    }
+
+    private XmlFile getFile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        return new XmlFile(Jenkins.XSTREAM, new File(jenkins.getRootDir(), "nomad-terminator-" + Util.rawEncode(cloud.getName()) + ".xml"));
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket which limits the rate of job registrations. Tokens are refilled continuously at a fixed rate up to the size of the
+ * bucket, so that short bursts go out at once while a sustained burst is spread evenly. Permits are reserved in advance: the bucket may
+ * run into debt and the caller delays its request until its permit is covered.
+ */
+final class NomadTokenBucket {
+
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param ratePerSecond number of permits per second
+     * @param capacity maximum number of permits which may be taken at once
+     */
+    NomadTokenBucket(double ratePerSecond, int capacity) {
+        this(ratePerSecond, capacity, System.nanoTime());
+    }
+
+    NomadTokenBucket(double ratePerSecond, int capacity, long now) {
+        this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Reserves a single permit.
+     * @param now current time in nanoseconds (see {@link System#nanoTime()})
+     * @return time in nanoseconds until the permit may be used (0 if it may be used right away)
+     */
+    synchronized long reserve(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerNano);
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.nomad;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import jenkins.model.Jenkins;
+
+/**
+ * Keeps the warm pool of every {@link NomadWorkerTemplate} filled (see {@link NomadCloud#maintainWarmPool()}).
+ */
+@Extension
+public class NomadWarmPoolMaintainer extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(NomadWarmPoolMaintainer.class.getName());
+
+    public NomadWarmPoolMaintainer() {
+        super("Nomad warm pool maintainer");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.SECONDS.toMillis(30);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof NomadCloud) {
+                try {
+                    ((NomadCloud) cloud).maintainWarmPool();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Maintaining the warm pool of cloud " + cloud.name + " failed", e);
+                }
+            }
+        }
+    }
+
+}
@@ -24,6 +24,9 @@ public class NomadWorker extends AbstractCloudSlave implements EphemeralNode {
     private final int idleTerminationInMinutes;
     private String namespace;
     private String region;
+    private String jobId;
+    private String taskGroup;
+    private transient NomadLaunchTimeline launchTimeline;
 
     @DataBoundConstructor
     public NomadWorker(String name, String cloudName, String labelString, int numExecutors, int idleTerminationInMinutes,
@@ -54,9 +57,20 @@ public class NomadWorker extends AbstractCloudSlave implements EphemeralNode {
 
     @Override
     protected void _terminate(TaskListener listener) {
-        LOGGER.log(Level.INFO, "Asking Nomad to deregister worker '" + getNodeName() + "' in namespace '" + getNamespace() +
+        NomadCloud cloud = getCloud();
+        if (cloud == null) {
+            LOGGER.log(Level.WARNING, "Unable to deregister worker '" + getNodeName() + "', cloud " + cloudName + " does not exist anymore");
+            return;
+        }
+        LOGGER.log(Level.INFO, "Asking Nomad to deregister worker '" + getNodeName() + "' (job '" + getJobId() + "') in namespace '" + getNamespace() +
                 "' in region '" + getRegion() + "'");
-        getCloud().nomad().stopWorker(getNodeName(), getNamespace(), getRegion());
+        if (taskGroup != null && !cloud.removeTaskGroup(getJobId(), taskGroup)) {
+            // other workers of the same bulk job are still running, only the task group of this worker is stopped
+            cloud.terminator().scaleDown(getJobId(), taskGroup, getNamespace(), getRegion());
+            return;
+        }
+        cloud.events().forget(getJobId());
+        cloud.terminator().stop(getJobId(), getNamespace(), getRegion());
     }
 
     public NomadCloud getCloud() {
@@ -111,4 +125,37 @@ public class NomadWorker extends AbstractCloudSlave implements EphemeralNode {
         this.region = region;
     }
 
+    /**
+     * @return ID of the Nomad job which runs this worker (the node name unless the job was dispatched)
+     */
+    public String getJobId() {
+        return this.jobId != null ? this.jobId : getNodeName();
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * @return the task group of this worker if it was started with other workers in a single job (bulk launch) otherwise null
+     */
+    public String getTaskGroup() {
+        return taskGroup;
+    }
+
+    public void setTaskGroup(String taskGroup) {
+        this.taskGroup = taskGroup;
+    }
+
+    /**
+     * @return the timeline of the launch of this worker or null if the worker was not launched by this Jenkins instance (e.g. restart)
+     */
+    NomadLaunchTimeline getLaunchTimeline() {
+        return launchTimeline;
+    }
+
+    void setLaunchTimeline(NomadLaunchTimeline launchTimeline) {
+        this.launchTimeline = launchTimeline;
+    }
+
 }
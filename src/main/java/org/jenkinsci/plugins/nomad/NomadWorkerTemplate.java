@@ -10,6 +10,7 @@ import java.util.UUID;
 
 import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.verb.POST;
 
@@ -35,6 +36,12 @@ public class NomadWorkerTemplate implements Describable<NomadWorkerTemplate> {
     private final String labels;
     private final String jobTemplate;
     private final String remoteFs;
+    private boolean dispatch;
+    private int minIdle;
+    private int maxIdle;
+    private int maxInstances;
+    private int weight;
+    private int bulkSize;
 
     // legacy fields (we have to keep them for backward compatibility)
     @Deprecated
@@ -113,6 +120,14 @@ public class NomadWorkerTemplate implements Describable<NomadWorkerTemplate> {
         this.jobTemplate = jobTemplate;
     }
 
+    private Object readResolve() {
+        // a warm pool larger than the allowed idle workers would be started and terminated over and over again
+        if (maxIdle > 0 && minIdle > maxIdle) {
+            maxIdle = minIdle;
+        }
+        return this;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public Descriptor<NomadWorkerTemplate> getDescriptor() {
@@ -123,6 +138,21 @@ public class NomadWorkerTemplate implements Describable<NomadWorkerTemplate> {
         return prefix + "-" + Long.toHexString(System.nanoTime());
     }
 
+    /**
+     * @return ID of the job of a bulk launch whose first worker has the given name (e.g. jenkins-batch-1a2b3c4d for jenkins-1a2b3c4d)
+     */
+    String createBulkJobId(String workerName) {
+        String suffix = workerName.startsWith(prefix + "-") ? workerName.substring(prefix.length() + 1) : workerName;
+        return prefix + "-batch-" + suffix;
+    }
+
+    /**
+     * @return true if the given worker was created from this template
+     */
+    public boolean isTemplateOf(NomadWorker worker) {
+        return worker.getNodeName().startsWith(prefix + "-") && labels.equals(worker.getLabelString());
+    }
+
     public String getPrefix() {
         return prefix;
     }
@@ -151,6 +181,83 @@ public class NomadWorkerTemplate implements Describable<NomadWorkerTemplate> {
         return jobTemplate;
     }
 
+    public boolean isDispatch() {
+        return dispatch;
+    }
+
+    /**
+     * @param dispatch true if workers are started by dispatching a parameterized job which is registered once per template
+     */
+    @DataBoundSetter
+    public void setDispatch(boolean dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * @param minIdle number of connected but unused workers which are kept ready (warm pool)
+     */
+    @DataBoundSetter
+    public void setMinIdle(int minIdle) {
+        this.minIdle = Math.max(0, minIdle);
+    }
+
+    /**
+     * @return maximum number of unused workers (0 means no limit), never less than {@link #getMinIdle()} so that the warm pool is not
+     * terminated right after it was started
+     */
+    public int getMaxIdle() {
+        return maxIdle > 0 ? Math.max(maxIdle, minIdle) : 0;
+    }
+
+    /**
+     * @param maxIdle maximum number of unused workers, more idle workers are terminated after
+     * {@link NomadRetentionStrategy#EXCESS_IDLE_MINUTES} (0 means no limit)
+     */
+    @DataBoundSetter
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = Math.max(0, maxIdle);
+    }
+
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    /**
+     * @param maxInstances maximum number of workers of this template (connected or on their way, 0 means no limit)
+     */
+    @DataBoundSetter
+    public void setMaxInstances(int maxInstances) {
+        this.maxInstances = Math.max(0, maxInstances);
+    }
+
+    /**
+     * @return share of this template when the instances of the cloud are short (see {@link NomadAdmissionController})
+     */
+    public int getWeight() {
+        return weight > 0 ? weight : 1;
+    }
+
+    @DataBoundSetter
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return maximum number of workers which are started together as a single Nomad job (0 or 1 means one job per worker)
+     */
+    public int getBulkSize() {
+        return bulkSize;
+    }
+
+    @DataBoundSetter
+    public void setBulkSize(int bulkSize) {
+        this.bulkSize = Math.max(0, bulkSize);
+    }
+
     @Extension
     public static final class DescriptorImpl extends Descriptor<NomadWorkerTemplate> {
         public static final String defaultJobTemplate = loadDefaultJobTemplate();
@@ -172,6 +279,16 @@ public class NomadWorkerTemplate implements Describable<NomadWorkerTemplate> {
             return "";
         }
 
+        /**
+         * Only compares the submitted values, so it needs neither a permission check nor a POST request.
+         */
+        public FormValidation doCheckMaxIdle(@QueryParameter int minIdle, @QueryParameter int maxIdle) {
+            if (maxIdle > 0 && minIdle > maxIdle) {
+                return FormValidation.error("Max Idle must not be less than Min Idle (" + minIdle + ")");
+            }
+            return FormValidation.ok();
+        }
+
         @POST
         public FormValidation doValidation(
                 @QueryParameter String nomadUrl,
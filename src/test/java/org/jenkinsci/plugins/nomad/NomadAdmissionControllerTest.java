@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadAdmissionController} shares the free instances of a cloud among its templates.
+ */
+public class NomadAdmissionControllerTest {
+
+    private final NomadAdmissionController controller = new NomadAdmissionController();
+
+    @Test
+    public void testEverythingIsAdmittedWithoutLimits() {
+        // GIVEN
+        NomadWorkerTemplate template = createTemplate("a", 1);
+
+        // WHEN
+        int admitted = controller.admit(template, 10, Integer.MAX_VALUE, t -> Integer.MAX_VALUE);
+
+        // THEN
+        assertThat(admitted, is(10));
+    }
+
+    @Test
+    public void testTemplateLimitIsRespected() {
+        // GIVEN
+        NomadWorkerTemplate template = createTemplate("a", 1);
+
+        // WHEN
+        int admitted = controller.admit(template, 10, Integer.MAX_VALUE, t -> 2);
+
+        // THEN
+        assertThat(admitted, is(2));
+    }
+
+    @Test
+    public void testFreeInstancesAreSharedByWeight() {
+        // GIVEN
+        NomadWorkerTemplate a = createTemplate("a", 3);
+        NomadWorkerTemplate b = createTemplate("b", 1);
+        // b is waiting while the cloud is full
+        assertThat(controller.admit(b, 10, 0, t -> Integer.MAX_VALUE), is(0));
+
+        // WHEN
+        int admittedA = controller.admit(a, 10, 4, t -> Integer.MAX_VALUE);
+
+        // THEN
+        assertThat(admittedA, is(3));
+        assertThat(controller.getReserved(b), is(1));
+        // a launched its workers, only the instance reserved for b is left
+        assertThat(controller.admit(a, 7, 1, t -> Integer.MAX_VALUE), is(0));
+        assertThat(controller.admit(b, 10, 1, t -> Integer.MAX_VALUE), is(1));
+        assertThat(controller.getReserved(b), is(0));
+    }
+
+    private static NomadWorkerTemplate createTemplate(String prefix, int weight) {
+        NomadWorkerTemplate template = new NomadWorkerTemplate(prefix, prefix, 1, false, 1, "", "");
+        template.setWeight(weight);
+        return template;
+    }
+
+}
@@ -1,8 +1,8 @@
 package org.jenkinsci.plugins.nomad;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
-import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.emptyString;
@@ -10,10 +10,15 @@ import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.when;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.lessThanOrExactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.moreThanOrExactly;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -117,7 +122,7 @@ public class NomadApiClientTest {
         // THEN
         assertThat(response.kind, is(FormValidation.Kind.ERROR));
         assertThat(response.getMessage(), startsWith("Response{protocol=http/1.1, code=401, message=Unauthorized"));
-        assertThat(getFieldValue(nomadApi, "client"), nullValue());
+        assertThat(getFieldValue(nomadApi, "client"), notNullValue());
     }
 
     @Test
@@ -134,7 +139,7 @@ public class NomadApiClientTest {
         // THEN
         assertThat(response.kind, is(FormValidation.Kind.ERROR));
         assertThat(response.getMessage(), startsWith("Response{protocol=http/1.1, code=403, message=Forbidden"));
-        assertThat(getFieldValue(nomadApi, "client"), nullValue());
+        assertThat(getFieldValue(nomadApi, "client"), notNullValue());
     }
 
     @Test
@@ -166,7 +171,54 @@ public class NomadApiClientTest {
         // THEN
         assertThat(response.kind, is(FormValidation.Kind.ERROR));
         assertThat(response.getMessage(), not(emptyString()));
-        assertThat(getFieldValue(nomadApi, "client"), nullValue());
+        assertThat(getFieldValue(nomadApi, "client"), notNullValue());
+    }
+
+    @Test
+    public void testCircuitBreakerOpensOnServerErrors() {
+        // GIVEN
+        stubFor(get(urlEqualTo("/v1/agent/self"))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+        when(nomadCloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        Object client = invoke(nomadApi, "client");
+
+        // WHEN
+        for (int i = 0; i < 10; i++) {
+            nomadApi.checkConnection();
+        }
+
+        // THEN
+        verify(5, getRequestedFor(urlEqualTo("/v1/agent/self")));
+        assertThat(getFieldValue(nomadApi, "client"), is(client));
+    }
+
+    @Test
+    public void testCircuitBreakerIsKeptPerServer() {
+        // GIVEN
+        String failing = wireMockRule.baseUrl();
+        String working = "http://127.0.0.1:" + wireMockRule.port();
+        stubFor(get(urlEqualTo("/v1/agent/self"))
+                .withHeader("Host", containing("localhost"))
+                .willReturn(aResponse()
+                        .withStatus(500)));
+        stubFor(get(urlEqualTo("/v1/agent/self"))
+                .withHeader("Host", containing("127.0.0.1"))
+                .willReturn(ok("{}")));
+        when(nomadCloud.getNomadUrl()).thenReturn(failing + "," + working);
+
+        // WHEN
+        FormValidation response = null;
+        for (int i = 0; i < 10; i++) {
+            response = nomadApi.checkConnection();
+        }
+
+        // THEN
+        // the background health check may add a request per server
+        verify(lessThanOrExactly(6), getRequestedFor(urlEqualTo("/v1/agent/self")).withHeader("Host", containing("localhost")));
+        verify(moreThanOrExactly(10), getRequestedFor(urlEqualTo("/v1/agent/self")).withHeader("Host", containing("127.0.0.1")));
+        assertThat(response.getMessage(), containsString(failing));
+        assertThat(response.getMessage(), not(containsString(working + ":")));
     }
 
-}
\ No newline at end of file
+}
@@ -2,24 +2,37 @@ package org.jenkinsci.plugins.nomad;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Mockito.when;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.badRequest;
 import static com.github.tomakehurst.wiremock.client.WireMock.delete;
 import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.put;
 import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jenkinsci.plugins.nomad.Api.JobInfo;
 import org.jenkinsci.plugins.nomad.Api.JobSummary;
@@ -32,6 +45,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 
 import hudson.util.FormValidation;
 
@@ -69,7 +83,30 @@ public class NomadApiTest {
     }
 
     @Test
-    public void testStartWorker() {
+    public void testConcurrentRequestsPerHostAreLimited() throws Exception {
+        // GIVEN
+        stubFor(get(urlEqualTo("/v1/agent/self"))
+                .willReturn(ok("{}").withFixedDelay(300)));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(cloud.getMaxRequestsPerHost()).thenReturn(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // WHEN
+        long start = System.currentTimeMillis();
+        Future<FormValidation> first = executor.submit(() -> api.checkConnection());
+        Future<FormValidation> second = executor.submit(() -> api.checkConnection());
+        first.get();
+        second.get();
+        long duration = System.currentTimeMillis() - start;
+        executor.shutdown();
+
+        // THEN
+        // the second request is sent when the first one is done
+        assertThat(duration >= 600, is(true));
+    }
+
+    @Test
+    public void testStartWorker() throws IOException {
         // GIVEN
         stubFor(put(urlEqualTo("/v1/jobs"))
                 .willReturn(ok()));
@@ -80,18 +117,18 @@ public class NomadApiTest {
         // WHEN
         String workerName = UUID.randomUUID().toString();
         String secret = UUID.randomUUID().toString();
-        String workerJob = api.startWorker(workerName, secret, template);
+        String jobId = api.startWorker(workerName, secret, template);
 
         // THEN
         verify(putRequestedFor(urlEqualTo("/v1/jobs"))
                 .withHeader("Content-Type", equalTo("application/json; charset=UTF-8"))
         );
-        JSONObject workerJobJSON = new JSONObject(workerJob);
-        assertThat(workerJobJSON.getJSONObject("Job").optString("Namespace"), is(""));
+        assertThat(jobId, is(workerName));
+        assertThat(api.getJobTemplate(template).getNamespace(), nullValue());
     }
 
     @Test
-    public void testStartWorkerWithNS() {
+    public void testStartWorkerWithNS() throws IOException {
         // GIVEN
         stubFor(put(urlEqualTo("/v1/jobs"))
                 .willReturn(ok()));
@@ -102,14 +139,282 @@ public class NomadApiTest {
         // WHEN
         String workerName = UUID.randomUUID().toString();
         String secret = UUID.randomUUID().toString();
-        String workerJob = api.startWorker(workerName, secret, template);
+        String jobId = api.startWorker(workerName, secret, template);
 
         // THEN
         verify(putRequestedFor(urlEqualTo("/v1/jobs"))
                 .withHeader("Content-Type", equalTo("application/json; charset=UTF-8"))
         );
-        JSONObject workerJobJSON = new JSONObject(workerJob);
-        assertThat(workerJobJSON.getJSONObject("Job").optString("Namespace"), is("ns1"));
+        assertThat(jobId, is(workerName));
+        assertThat(api.getJobTemplate(template).getNamespace(), is("ns1"));
+    }
+
+    @Test
+    public void testStartWorkerWithDispatch() throws IOException {
+        // GIVEN
+        String parentID = "jenkins-parameterized-00000000";
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .willReturn(ok()));
+        stubFor(post(urlEqualTo("/v1/job/" + parentID + "/dispatch?namespace=ns1"))
+                .willReturn(ok("{\"DispatchedJobID\": \"" + parentID + "/dispatch-1\"}")));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.isDispatch()).thenReturn(true);
+        when(template.getPrefix()).thenReturn("jenkins");
+        when(template.getLabels()).thenReturn("");
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\", \"Namespace\": \"ns1\" } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        api.startWorker(UUID.randomUUID().toString(), UUID.randomUUID().toString(), template);
+        String jobId = api.startWorker(UUID.randomUUID().toString(), UUID.randomUUID().toString(), template);
+
+        // THEN
+        verify(1, putRequestedFor(urlEqualTo("/v1/jobs"))
+                .withRequestBody(matchingJsonPath("$.Job.ParameterizedJob.MetaRequired[0]", equalTo("worker_name")))
+                .withRequestBody(matchingJsonPath("$.Job.ID", equalTo(parentID)))
+        );
+        verify(2, postRequestedFor(urlEqualTo("/v1/job/" + parentID + "/dispatch?namespace=ns1"))
+                .withRequestBody(matchingJsonPath("$.Meta.worker_secret"))
+        );
+        assertThat(jobId, is(parentID + "/dispatch-1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDispatchWithoutDispatchedJobIdFails() throws IOException {
+        // GIVEN
+        String parentID = "jenkins-parameterized-00000000";
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .willReturn(ok()));
+        stubFor(post(urlEqualTo("/v1/job/" + parentID + "/dispatch"))
+                .willReturn(ok("{}")));
+        mockDispatchTemplate();
+
+        // WHEN
+        api.startWorker(UUID.randomUUID().toString(), UUID.randomUUID().toString(), template);
+    }
+
+    @Test
+    public void testParameterizedJobIsRegisteredAgainAfterNotFound() throws IOException {
+        // GIVEN
+        String parentID = "jenkins-parameterized-00000000";
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .willReturn(ok()));
+        stubFor(post(urlEqualTo("/v1/job/" + parentID + "/dispatch"))
+                .inScenario("deleted")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(notFound())
+                .willSetStateTo("registered"));
+        stubFor(post(urlEqualTo("/v1/job/" + parentID + "/dispatch"))
+                .inScenario("deleted")
+                .whenScenarioStateIs("registered")
+                .willReturn(ok("{\"DispatchedJobID\": \"" + parentID + "/dispatch-1\"}")));
+        mockDispatchTemplate();
+        try {
+            api.startWorker(UUID.randomUUID().toString(), UUID.randomUUID().toString(), template);
+        } catch (IOException e) {
+            // expected, the parameterized job is unknown to Nomad
+        }
+
+        // WHEN
+        String jobId = api.startWorker(UUID.randomUUID().toString(), UUID.randomUUID().toString(), template);
+
+        // THEN
+        verify(2, putRequestedFor(urlEqualTo("/v1/jobs")));
+        assertThat(jobId, is(parentID + "/dispatch-1"));
+    }
+
+    @Test
+    public void testFailedRegistrationOfParameterizedJobIsReported() {
+        // GIVEN
+        String parentID = "jenkins-parameterized-00000000";
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .willReturn(badRequest()));
+        mockDispatchTemplate();
+
+        // WHEN
+        IOException error = null;
+        try {
+            api.startWorker(UUID.randomUUID().toString(), UUID.randomUUID().toString(), template);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        // THEN
+        assertThat(error, notNullValue());
+        verify(0, postRequestedFor(urlEqualTo("/v1/job/" + parentID + "/dispatch")));
+    }
+
+    @Test
+    public void testStartWorkerIsRetried() throws IOException {
+        // GIVEN
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .inScenario("retry")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(serverError())
+                .willSetStateTo("available"));
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .inScenario("retry")
+                .whenScenarioStateIs("available")
+                .willReturn(ok()));
+        stubFor(get(urlEqualTo("/v1/job/jenkins-1"))
+                .willReturn(notFound()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\" } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        String jobId = api.startWorker("jenkins-1", "secret", template);
+
+        // THEN
+        assertThat(jobId, is("jenkins-1"));
+        verify(2, putRequestedFor(urlEqualTo("/v1/jobs")));
+        verify(1, getRequestedFor(urlEqualTo("/v1/job/jenkins-1")));
+    }
+
+    @Test
+    public void testMetricsAreRecordedPerEndpoint() throws IOException {
+        // GIVEN
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .inScenario("metrics")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(serverError())
+                .willSetStateTo("available"));
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .inScenario("metrics")
+                .whenScenarioStateIs("available")
+                .willReturn(ok()));
+        stubFor(get(urlEqualTo("/v1/job/jenkins-1"))
+                .willReturn(notFound()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\" } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        api.startWorker("jenkins-1", "secret", template);
+
+        // THEN
+        NomadApiMetrics.EndpointMetrics jobs = api.metrics().get(NomadApiMetrics.Endpoint.JOBS);
+        assertThat(jobs.getRequests(), is(2L));
+        assertThat(jobs.getRetries(), is(1L));
+        assertThat(jobs.getStatusCount(500), is(1L));
+        assertThat(jobs.getStatusCount(200), is(1L));
+        assertThat(jobs.getLatency().getCount(), is(2L));
+        assertThat(api.metrics().get(NomadApiMetrics.Endpoint.JOB).getStatusCount(404), is(1L));
+    }
+
+    @Test
+    public void testStartWorkerIsNotRegisteredAgainWhenJobExists() throws IOException {
+        // GIVEN
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .willReturn(serverError()));
+        stubFor(get(urlEqualTo("/v1/job/jenkins-1"))
+                .willReturn(ok("{}")));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\" } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        String jobId = api.startWorker("jenkins-1", "secret", template);
+
+        // THEN
+        assertThat(jobId, is("jenkins-1"));
+        verify(1, putRequestedFor(urlEqualTo("/v1/jobs")));
+    }
+
+    @Test
+    public void testGetRunningWorker() throws IOException {
+        // GIVEN
+        stubFor(get(urlEqualTo("/v1/job/jenkins-1?namespace=default"))
+                .willReturn(ok("{\"ID\": \"jenkins-1\", \"Status\": \"running\"}")));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+
+        // WHEN
+        JSONObject job = api.getRunningWorker("jenkins-1", "default");
+
+        // THEN
+        assertThat(job.getString("Status"), is("running"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetRunningWorkerFailsWhenJobIsUnknown() throws IOException {
+        // GIVEN
+        stubFor(get(urlEqualTo("/v1/job/jenkins-1"))
+                .willReturn(notFound()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+
+        // WHEN
+        api.getRunningWorker("jenkins-1", null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testStartWorkerFailsWhenRetriesAreExhausted() throws IOException {
+        // GIVEN
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .willReturn(serverError()));
+        stubFor(get(urlEqualTo("/v1/job/jenkins-1"))
+                .willReturn(notFound()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\" } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        api.startWorker("jenkins-1", "secret", template);
+    }
+
+    @Test
+    public void testPlanCapacity() throws IOException {
+        // GIVEN
+        stubFor(post(urlEqualTo("/v1/job/jenkins-capacity-probe/plan"))
+                .withRequestBody(matchingJsonPath("$.Job.TaskGroups[0].Count", equalTo("20")))
+                .willReturn(ok("{\"FailedTGAllocs\": {\"jenkins\": {\"CoalescedFailures\": 14}}}")));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getPrefix()).thenReturn("jenkins");
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\", \"TaskGroups\": [{ \"Name\": \"jenkins\" }] } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        int placeable = api.planCapacity(template, 20);
+
+        // THEN
+        assertThat(placeable, is(5));
+    }
+
+    @Test
+    public void testStartWorkers() throws IOException {
+        // GIVEN
+        stubFor(put(urlEqualTo("/v1/jobs"))
+                .withRequestBody(matchingJsonPath("$.Job.ID", equalTo("jenkins-batch-1")))
+                .withRequestBody(matchingJsonPath("$.Job.TaskGroups[0].Name", equalTo("jenkins-a")))
+                .withRequestBody(matchingJsonPath("$.Job.TaskGroups[1].Name", equalTo("jenkins-b")))
+                .withRequestBody(matchingJsonPath("$.Job.TaskGroups[1].Tasks[0].Env.SECRET", equalTo("secret-b")))
+                .willReturn(ok()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\", \"TaskGroups\": [{ \"Name\": \"jenkins\", "
+                + "\"Tasks\": [{ \"Env\": { \"SECRET\": \"%WORKER_SECRET%\" } }] }] } }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        api.startWorkers("jenkins-batch-1", Arrays.asList("jenkins-a", "jenkins-b"), Arrays.asList("secret-a", "secret-b"), template);
+
+        // THEN
+        verify(1, putRequestedFor(urlEqualTo("/v1/jobs")));
+    }
+
+    @Test
+    public void testScaleDownWorker() {
+        // GIVEN
+        stubFor(post(urlEqualTo("/v1/job/jenkins-batch-1/scale?namespace=ns1"))
+                .withRequestBody(matchingJsonPath("$.Target.Group", equalTo("jenkins-a")))
+                .withRequestBody(matchingJsonPath("$.Count", equalTo("0")))
+                .willReturn(ok()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+
+        // WHEN
+        boolean scaledDown = api.scaleDownWorker("jenkins-batch-1", "jenkins-a", "ns1", null);
+
+        // THEN
+        assertThat(scaledDown, is(true));
+        verify(postRequestedFor(urlEqualTo("/v1/job/jenkins-batch-1/scale?namespace=ns1")));
     }
 
     @Test
@@ -209,6 +514,27 @@ public class NomadApiTest {
         verify(postRequestedFor(urlEqualTo("/v1/jobs/parse")));
     }
 
+    @Test
+    public void testValidateTemplateHCLIsParsedOnce() {
+        // GIVEN
+        stubFor(post(urlMatching("/v1/jobs/parse"))
+                .willReturn(ok("{}")));
+        stubFor(post(urlMatching("/v1/job/([a-f0-9-]*)/plan"))
+                .willReturn(ok()));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getJobTemplate()).thenReturn("job \"example\" { type = \"service\" group \"cache\" {} }");
+        when(template.getRemoteFs()).thenReturn("");
+
+        // WHEN
+        api.validateTemplate(template);
+        FormValidation response = api.validateTemplate(template);
+
+        // THEN
+        assertThat(response.kind, is(FormValidation.Kind.OK));
+        verify(1, postRequestedFor(urlEqualTo("/v1/jobs/parse")));
+        verify(2, postRequestedFor(urlMatching("/v1/job/([a-f0-9-]*)/plan")));
+    }
+
     @Test
     public void testGetJobs() {
         // GIVEN
@@ -249,6 +575,81 @@ public class NomadApiTest {
         assertThat(jobSummary.getNamespace(), is("ns1"));
     }
 
+    @Test
+    public void testForEachJobFiltersJobs() {
+        // GIVEN
+        stubFor(get(urlMatching("/v1/jobs\\?prefix=jenkins&namespace=\\*"))
+                .willReturn(ok("[{\"ID\":\"jenkins-A\",\"Status\":\"dead\"},"
+                        + "{\"ID\":\"jenkins-B\",\"Status\":\"running\"},"
+                        + "{\"ID\":\"jenkins-C\",\"Status\":\"dead\"}]")));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        List<JobInfo> jobs = new ArrayList<>();
+
+        // WHEN
+        boolean result = api.forEachJob("jenkins", job -> "running".equals(job.getStatus()), jobs::add);
+
+        // THEN
+        assertThat(result, is(true));
+        assertThat(jobs.size(), is(1));
+        assertThat(jobs.get(0).getID(), is("jenkins-B"));
+    }
+
+    @Test
+    public void testWatchJobs() throws IOException {
+        // GIVEN
+        stubFor(get(urlMatching("/v1/jobs\\?.*"))
+                .withQueryParam("index", equalTo("7"))
+                .withQueryParam("wait", equalTo("10s"))
+                .willReturn(ok("[{\"ID\":\"jenkins-A\",\"Name\":\"jenkins-A\",\"Status\":\"running\",\"ModifyIndex\":8}]")
+                        .withHeader("X-Nomad-Index", "8")));
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+
+        // WHEN
+        NomadApi.JobList list = api.watchJobs("jenkins", 7, 10);
+
+        // THEN
+        assertThat(list.getIndex(), is(8L));
+        assertThat(list.getJobs().length, is(1));
+        assertThat(list.getJobs()[0].getModifyIndex(), is(8L));
+        // blocking queries are counted on their own and their wait time is not recorded as latency
+        assertThat(api.metrics().get(NomadApiMetrics.Endpoint.JOBS_WATCH).getRequests(), is(1L));
+        assertThat(api.metrics().get(NomadApiMetrics.Endpoint.JOBS_WATCH).getLatency().getCount(), is(0L));
+        assertThat(api.metrics().get(NomadApiMetrics.Endpoint.JOBS).getRequests(), is(0L));
+    }
+
+    @Test
+    public void testWatchJobsFailsOverToAnotherServer() throws IOException {
+        // GIVEN
+        stubFor(get(urlMatching("/v1/jobs\\?.*"))
+                .willReturn(ok("[{\"ID\":\"jenkins-A\",\"Name\":\"jenkins-A\",\"Status\":\"running\"}]")
+                        .withHeader("X-Nomad-Index", "8")));
+        when(cloud.getNomadUrl()).thenReturn("http://127.0.0.1:1," + wireMockRule.baseUrl());
+
+        // WHEN
+        NomadApi.JobList first = api.watchJobs("jenkins", 0, 10);
+        NomadApi.JobList second = api.watchJobs("jenkins", 0, 10);
+
+        // THEN
+        assertThat(first.getJobs().length, is(1));
+        assertThat(second.getJobs().length, is(1));
+    }
+
+    @Test
+    public void testGetJobsFailsOverToAnotherServer() {
+        // GIVEN
+        stubFor(get(urlMatching("/v1/jobs\\?prefix=jenkins&namespace=\\*"))
+                .willReturn(ok("[{\"ID\":\"jenkins-A\",\"Name\":\"jenkins-A\",\"Status\":\"running\"}]")));
+        when(cloud.getNomadUrl()).thenReturn("http://127.0.0.1:1," + wireMockRule.baseUrl());
+
+        // WHEN
+        JobInfo[] first = api.getRunningWorkers("jenkins");
+        JobInfo[] second = api.getRunningWorkers("jenkins");
+
+        // THEN
+        assertThat(first.length, is(1));
+        assertThat(second.length, is(1));
+    }
+
     @Test
     public void testGetJobsIsEmpty() {
         // GIVEN
@@ -278,4 +679,14 @@ public class NomadApiTest {
         verify(getRequestedFor(urlEqualTo("/v1/agent/self"))
                 .withHeader("X-Nomad-Token", equalTo("my-acl-token")));
     }
+
+    private void mockDispatchTemplate() {
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.isDispatch()).thenReturn(true);
+        when(template.getPrefix()).thenReturn("jenkins");
+        when(template.getLabels()).thenReturn("");
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\" } }");
+        when(template.getRemoteFs()).thenReturn("");
+    }
+
 }
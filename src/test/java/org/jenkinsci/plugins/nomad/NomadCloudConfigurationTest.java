@@ -65,7 +65,7 @@ public class NomadCloudConfigurationTest {
         String secret = UUID.randomUUID().toString();
 
         // WHEN
-        String job = nomadApi.buildWorkerJob(workerName, secret, template);
+        String job = nomadApi.getJobTemplate(template).render(workerName, secret, template.getRemoteFs());
 
         // THEN
         assertThat(job, hasJsonPath("$.Job.ID", is(workerName)));
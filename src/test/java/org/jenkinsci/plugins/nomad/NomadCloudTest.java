@@ -1,24 +1,59 @@
 package org.jenkinsci.plugins.nomad;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.delete;
+import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+
+import org.jenkinsci.plugins.plaincredentials.impl.StringCredentialsImpl;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import hudson.model.TaskListener;
 import hudson.model.labels.LabelAtom;
 import hudson.slaves.NodeProvisioner;
+import hudson.util.Secret;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class NomadCloudTest {
 
     @Rule
     public JenkinsRule r = new JenkinsRule();
 
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(0);
+
     @Test
     public void testCanProvision() {
         // GIVEN
@@ -47,6 +82,73 @@ public class NomadCloudTest {
         assertThat(result.size(), is(3));
     }
 
+    @Test
+    public void testLaunchIsCompletedAfterReconfiguration() throws Exception {
+        // GIVEN
+        stubFor(put(urlEqualTo("/v1/jobs")).willReturn(ok()));
+        LabelAtom label = createLabel();
+        NomadWorkerTemplate template = new NomadWorkerTemplate("jenkins", label.getName(), 1, true, 1, null,
+                "{\"Job\": {\"ID\": \"%WORKER_NAME%\"}}");
+        NomadCloud cloud = createCloud(template, wireMockRule.baseUrl());
+        cloud.setEventStream(false);
+        r.jenkins.clouds.add(cloud);
+        NodeProvisioner.PlannedNode plannedNode = cloud.provision(label, 1).iterator().next();
+        awaitState(cloud, NomadLaunch.State.STARTING);
+
+        // WHEN
+        NomadCloud reconfigured = createCloud(template, wireMockRule.baseUrl());
+        reconfigured.setEventStream(false);
+        r.jenkins.clouds.replace(cloud, reconfigured);
+        new NomadCloud.LaunchListener().onOnline(r.jenkins.getComputer(plannedNode.displayName), TaskListener.NULL);
+
+        // THEN
+        assertThat(plannedNode.future.get(10, TimeUnit.SECONDS).getNodeName(), is(plannedNode.displayName));
+        assertThat(cloud.launches().getLaunches(), is(empty()));
+        assertThat(NomadCloud.launchingCloud(plannedNode.displayName), is(nullValue()));
+    }
+
+    @Test
+    public void testConcurrentTerminationOfBulkJobStopsJob() throws Exception {
+        // GIVEN
+        stubFor(post(urlEqualTo("/v1/job/jenkins-batch-1/scale")).willReturn(ok()));
+        stubFor(delete(urlEqualTo("/v1/job/jenkins-batch-1")).willReturn(ok()));
+        LabelAtom label = createLabel();
+        NomadCloud cloud = createCloud(createTemplate(label.getName()), wireMockRule.baseUrl());
+        r.jenkins.clouds.add(cloud);
+        List<NomadWorker> workers = new ArrayList<>();
+        for (String name : Arrays.asList("jenkins-a", "jenkins-b", "jenkins-c")) {
+            NomadWorker worker = new NomadWorker(name, cloud.name, label.getName(), 1, 1, true, "");
+            worker.setJobId("jenkins-batch-1");
+            worker.setTaskGroup(name);
+            r.jenkins.addNode(worker);
+            workers.add(worker);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        CountDownLatch start = new CountDownLatch(1);
+
+        // WHEN
+        List<Future<?>> terminations = new ArrayList<>();
+        for (NomadWorker worker : workers) {
+            terminations.add(executor.submit(() -> {
+                start.await();
+                worker.terminate();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> termination : terminations) {
+            termination.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        for (int i = 0; i < 100 && cloud.terminator().getQueueSize() > 0; i++) {
+            Thread.sleep(100);
+        }
+
+        // THEN
+        verify(2, postRequestedFor(urlEqualTo("/v1/job/jenkins-batch-1/scale")));
+        verify(1, deleteRequestedFor(urlEqualTo("/v1/job/jenkins-batch-1")));
+    }
+
     @Test
     public void testGetTemplateWithLabels() {
         // GIVEN
@@ -61,6 +163,27 @@ public class NomadCloudTest {
         assertThat(result, is(template));
     }
 
+    @Test
+    public void testGetTemplateWithMultipleTemplates() {
+        // GIVEN
+        LabelAtom labelA = createLabel();
+        LabelAtom labelB = createLabel();
+        NomadWorkerTemplate templateA = createTemplate(labelA.getName());
+        NomadWorkerTemplate templateB = createTemplate(labelB.getName() + " linux");
+        NomadCloud cloud = createCloud(Arrays.asList(templateA, templateB), "nomadUrl");
+
+        // WHEN
+        NomadWorkerTemplate resultA = cloud.getTemplate(labelA);
+        NomadWorkerTemplate resultB = cloud.getTemplate(labelB);
+        NomadWorkerTemplate cachedB = cloud.getTemplate(labelB);
+
+        // THEN
+        assertThat(resultA, is(templateA));
+        assertThat(resultB, is(templateB));
+        assertThat(cachedB, is(templateB));
+        assertThat(cloud.getTemplate(null), nullValue());
+    }
+
     @Test
     public void testGetTemplateWithLabelsNull() {
         // GIVEN
@@ -103,10 +226,93 @@ public class NomadCloudTest {
         assertThat(result, is(result));
     }
 
+    @Test
+    public void testPruneOrphanedWorkers() {
+        // GIVEN
+        stubFor(get(urlPathEqualTo("/v1/jobs"))
+                .willReturn(ok("[{\"ID\":\"jenkins-orphan\",\"Name\":\"jenkins-orphan\",\"Status\":\"running\",\"Namespace\":\"ns1\","
+                        + "\"SubmitTime\":1000},"
+                        + "{\"ID\":\"jenkins-new\",\"Name\":\"jenkins-new\",\"Status\":\"running\",\"Namespace\":\"ns1\","
+                        + "\"SubmitTime\":" + System.currentTimeMillis() * 1000000 + "},"
+                        + "{\"ID\":\"jenkins-parameterized\",\"Name\":\"jenkins-parameterized\",\"Status\":\"running\","
+                        + "\"ParameterizedJob\":true,\"SubmitTime\":1000}]")));
+        stubFor(delete(urlPathMatching("/v1/job/.*"))
+                .willReturn(ok()));
+        NomadCloud cloud = createCloud(createTemplate("label"), wireMockRule.baseUrl());
+
+        // WHEN
+        cloud.pruneOrphanedWorkers();
+
+        // THEN
+        verify(1, getRequestedFor(urlPathEqualTo("/v1/jobs")));
+        verify(1, deleteRequestedFor(urlPathMatching("/v1/job/.*")));
+        verify(deleteRequestedFor(urlEqualTo("/v1/job/jenkins-orphan?namespace=ns1")));
+    }
+
+    @Test
+    public void testHttpClientSettings() {
+        // GIVEN
+        stubFor(get(urlEqualTo("/v1/agent/self")).willReturn(ok("{}")));
+        NomadCloud cloud = createCloud(createTemplate("label"), wireMockRule.baseUrl());
+        cloud.setConnectionPoolSize(20);
+        cloud.setReadTimeout(30);
+
+        // WHEN
+        cloud.nomad().checkConnection();
+
+        // THEN
+        assertThat(cloud.getConnectionPoolSize(), is(20));
+        assertThat(cloud.getKeepAliveDuration(), is(300));
+        assertThat(cloud.getReadTimeout(), is(30));
+        assertThat(cloud.getCallTimeout(), is(0));
+        assertThat(cloud.getConnectionPoolStats(), is("0 active, 1 idle"));
+    }
+
+    @Test
+    public void testNomadACLIsRefreshedWhenCredentialsChange() throws IOException {
+        // GIVEN
+        SystemCredentialsProvider.getInstance().getCredentials().add(createCredentials("token-1"));
+        SystemCredentialsProvider.getInstance().save();
+        NomadCloud cloud = new NomadCloud("nomad", "nomadUrl", false, null, null, null, null, 1, "acl", false, null);
+        String token = cloud.getNomadACL();
+
+        // WHEN
+        SystemCredentialsProvider.getInstance().getCredentials().clear();
+        SystemCredentialsProvider.getInstance().getCredentials().add(createCredentials("token-2"));
+        SystemCredentialsProvider.getInstance().save();
+
+        // THEN
+        assertThat(token, is("token-1"));
+        assertThat(cloud.getNomadACL(), is("token-2"));
+    }
+
+    private void awaitState(NomadCloud cloud, NomadLaunch.State state) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            List<NomadLaunch> launches = cloud.launches().getLaunches();
+            if (!launches.isEmpty() && launches.get(0).getState() == state) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("launch did not reach state " + state);
+    }
+
+    private StringCredentialsImpl createCredentials(String token) {
+        return new StringCredentialsImpl(CredentialsScope.GLOBAL, "acl", "", Secret.fromString(token));
+    }
+
     private NomadCloud createCloud(NomadWorkerTemplate template) {
+        return createCloud(template, "nomadUrl");
+    }
+
+    private NomadCloud createCloud(NomadWorkerTemplate template, String nomadUrl) {
+        return createCloud(Collections.singletonList(template), nomadUrl);
+    }
+
+    private NomadCloud createCloud(List<NomadWorkerTemplate> templates, String nomadUrl) {
         return new NomadCloud(
                 "nomad",
-                "nomadUrl",
+                nomadUrl,
                 false,
                 null,
                 null,
@@ -115,7 +321,7 @@ public class NomadCloudTest {
                 1,
                 "",
                 false,
-                Collections.singletonList(template));
+                templates);
     }
 
     private NomadWorkerTemplate createTemplate(String labels) {
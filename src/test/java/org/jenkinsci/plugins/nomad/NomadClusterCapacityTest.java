@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * Checks that the {@link NomadClusterCapacity} hands out the estimated places of the Nomad cluster only once.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NomadClusterCapacityTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(0);
+
+    @Mock
+    NomadCloud cloud;
+
+    @Mock
+    NomadWorkerTemplate template;
+
+    @InjectMocks
+    NomadApi nomad;
+
+    @Before
+    public void setUp() {
+        when(cloud.getNomadUrl()).thenReturn(wireMockRule.baseUrl());
+        when(template.getPrefix()).thenReturn("jenkins");
+        when(template.getJobTemplate()).thenReturn("{\"Job\": { \"ID\": \"%WORKER_NAME%\", \"TaskGroups\": [{ \"Name\": \"jenkins\" }] } }");
+        when(template.getRemoteFs()).thenReturn("");
+    }
+
+    @Test
+    public void testPlacesOfFailedLaunchesAreReleased() {
+        // GIVEN
+        stubPlaceable(2);
+        NomadClusterCapacity capacity = new NomadClusterCapacity();
+        capacity.refresh(nomad, Collections.singletonList(template));
+        NomadClusterCapacity.Grant grant = capacity.acquire(template, 2);
+
+        // WHEN
+        int exhausted = capacity.acquire(template, 1).getCount();
+        capacity.release(grant);
+
+        // THEN
+        assertThat(grant.getCount(), is(2));
+        assertThat(exhausted, is(0));
+        assertThat(capacity.acquire(template, 2).getCount(), is(1));
+    }
+
+    @Test
+    public void testPlacesOfOldEstimateAreNotReleased() {
+        // GIVEN
+        stubPlaceable(1);
+        NomadClusterCapacity capacity = new NomadClusterCapacity();
+        capacity.refresh(nomad, Collections.singletonList(template));
+        NomadClusterCapacity.Grant grant = capacity.acquire(template, 1);
+
+        // WHEN
+        capacity.refresh(nomad, Collections.singletonList(template));
+        capacity.release(grant);
+
+        // THEN
+        assertThat(capacity.acquire(template, 2).getCount(), is(1));
+    }
+
+    private static void stubPlaceable(int placeable) {
+        int failures = NomadClusterCapacity.PROBE_SIZE - placeable - 1;
+        stubFor(post(urlEqualTo("/v1/job/jenkins-capacity-probe/plan"))
+                .willReturn(ok("{\"FailedTGAllocs\": {\"jenkins\": {\"CoalescedFailures\": " + failures + "}}}")));
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadDemandForecaster} follows the trend of the demand.
+ */
+public class NomadDemandForecasterTest {
+
+    private final NomadDemandForecaster forecaster = new NomadDemandForecaster();
+
+    @Test
+    public void testUnknownLabel() {
+        assertThat(forecaster.forecast("linux", 60), is(-1.0));
+    }
+
+    @Test
+    public void testConstantDemand() {
+        // GIVEN
+        for (int i = 0; i < 10; i++) {
+            forecaster.observe("linux", 4, 10000L * (i + 1));
+        }
+
+        // WHEN
+        double forecast = forecaster.forecast("linux", 60);
+
+        // THEN
+        assertThat(forecast, is(closeTo(4, 0.01)));
+    }
+
+    @Test
+    public void testGrowingDemandIsForecast() {
+        // GIVEN
+        // one more executor is needed every ten seconds
+        for (int i = 0; i < 30; i++) {
+            forecaster.observe("linux", i, 10000L * (i + 1));
+        }
+
+        // WHEN
+        double forecast = forecaster.forecast("linux", 40);
+
+        // THEN
+        assertThat(forecast, is(greaterThan(31.0)));
+        assertThat(forecast, is(closeTo(33, 1.5)));
+    }
+
+    @Test
+    public void testObservationsWithinASecondAreIgnored() {
+        // GIVEN
+        forecaster.observe("linux", 1, 10000);
+
+        // WHEN
+        forecaster.observe("linux", 100, 10500);
+
+        // THEN
+        assertThat(forecaster.forecast("linux", 60), is(1.0));
+    }
+
+}
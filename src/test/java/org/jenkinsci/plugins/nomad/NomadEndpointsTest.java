@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Checks that the {@link NomadEndpoints} route requests as expected.
+ */
+public class NomadEndpointsTest {
+
+    @Test
+    public void testParse() {
+        assertThat(NomadEndpoints.parse("http://a:4646, http://b:4646/ ,http://c:4646"),
+                contains("http://a:4646", "http://b:4646", "http://c:4646"));
+    }
+
+    @Test
+    public void testReadsSkipFailedServers() {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646,http://b:4646");
+
+        // WHEN
+        endpoints.markFailed(endpoints.getEndpoints().get(0));
+
+        // THEN
+        assertThat(endpoints.forRead().getUrl(), is("http://b:4646"));
+        assertThat(endpoints.forRead().getUrl(), is("http://b:4646"));
+    }
+
+    @Test
+    public void testServersWithOpenCircuitBreakerAreSkipped() {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646,http://b:4646");
+        NomadEndpoints.Endpoint a = endpoints.getEndpoints().get(0);
+        endpoints.update(a, true, true);
+
+        // WHEN
+        for (int i = 0; i < 5; i++) {
+            a.getBreaker().record(NomadCircuitBreaker.Outcome.SERVER_ERROR);
+        }
+
+        // THEN
+        assertThat(endpoints.forRead().getUrl(), is("http://b:4646"));
+        assertThat(endpoints.forRead().getUrl(), is("http://b:4646"));
+        assertThat(endpoints.forWrite().getUrl(), is("http://b:4646"));
+        assertThat(endpoints.getEndpoints().get(1).getBreaker().getState(), is(NomadCircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testUnknownUrlsShareFallbackBreaker() {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646");
+
+        // WHEN
+        NomadCircuitBreaker breaker = endpoints.breakerOf(HttpUrl.get("http://x:4646/v1/jobs"));
+
+        // THEN
+        assertThat(breaker, is(endpoints.breakerOf(HttpUrl.get("http://y:4646/v1/jobs"))));
+        assertThat(endpoints.breakerOf(HttpUrl.get("http://a:4646/v1/jobs")), is(endpoints.getEndpoints().get(0).getBreaker()));
+    }
+
+    @Test
+    public void testWritesAreSentToLeader() {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646,http://b:4646,http://c:4646");
+
+        // WHEN
+        endpoints.update(endpoints.getEndpoints().get(2), true, true);
+
+        // THEN
+        assertThat(endpoints.forWrite().getUrl(), is("http://c:4646"));
+    }
+
+    @Test
+    public void testRequestsPerHostAreLimited() throws InterruptedException {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646,http://b:4646", 2);
+        NomadEndpoints.Endpoint a = endpoints.getEndpoints().get(0);
+
+        // WHEN
+        a.acquire();
+        a.acquire();
+
+        // THEN
+        assertThat(a.getAvailableRequests(), is(0));
+        assertThat(endpoints.getEndpoints().get(1).getAvailableRequests(), is(2));
+        a.release();
+        assertThat(a.getAvailableRequests(), is(1));
+    }
+
+    @Test
+    public void testRequestsPerHostAreUnlimited() {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646");
+
+        // WHEN
+        int available = endpoints.getEndpoints().get(0).getAvailableRequests();
+
+        // THEN
+        assertThat(available, is(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testMoveTo() {
+        // GIVEN
+        NomadEndpoints endpoints = new NomadEndpoints("http://a:4646,https://b:4646/nomad");
+
+        // WHEN
+        HttpUrl url = endpoints.moveTo(HttpUrl.get("http://a:4646/v1/jobs?prefix=jenkins"), endpoints.getEndpoints().get(1));
+
+        // THEN
+        assertThat(url.toString(), is("https://b:4646/nomad/v1/jobs?prefix=jenkins"));
+    }
+
+}
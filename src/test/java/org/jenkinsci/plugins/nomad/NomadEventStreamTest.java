@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Checks that the {@link NomadEventStream} keeps track of the worker states as expected.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NomadEventStreamTest {
+
+    @Mock
+    NomadCloud cloud;
+
+    @Mock
+    NomadWorkerTemplate template;
+
+    NomadEventStream events;
+
+    @Before
+    public void setUp() {
+        when(template.getPrefix()).thenReturn("jenkins");
+        when(cloud.getTemplates()).thenReturn(Collections.singletonList(template));
+        events = new NomadEventStream(cloud);
+    }
+
+    @Test
+    public void testAllocationRunning() {
+        // WHEN
+        events.handle(message("Allocation", "AllocationUpdated",
+                "{\"Allocation\": {\"JobID\": \"jenkins-1\", \"ClientStatus\": \"running\"}}"));
+
+        // THEN
+        assertThat(events.getState("jenkins-1").getStatus(), is(NomadEventStream.Status.RUNNING));
+        assertThat(events.watchFailure("jenkins-1").isDone(), is(false));
+    }
+
+    @Test
+    public void testBlockedPlacementIsPending() {
+        // GIVEN
+        CompletableFuture<String> failure = events.watchFailure("jenkins-1");
+
+        // WHEN
+        events.handle(message("Evaluation", "EvaluationUpdated",
+                "{\"Evaluation\": {\"JobID\": \"jenkins-1\", \"Status\": \"complete\", \"FailedTGAllocs\": {\"workers\": {}},"
+                        + " \"BlockedEval\": \"1234\"}}"));
+
+        // THEN
+        assertThat(failure.isDone(), is(false));
+        assertThat(events.getState("jenkins-1").getStatus(), is(NomadEventStream.Status.PENDING));
+    }
+
+    @Test
+    public void testFailedEvaluation() {
+        // GIVEN
+        CompletableFuture<String> failure = events.watchFailure("jenkins-1");
+
+        // WHEN
+        events.handle(message("Evaluation", "EvaluationUpdated",
+                "{\"Evaluation\": {\"JobID\": \"jenkins-1\", \"Status\": \"failed\","
+                        + " \"StatusDescription\": \"maximum attempts reached\"}}"));
+
+        // THEN
+        assertThat(failure.isDone(), is(true));
+        assertThat(events.getState("jenkins-1").getStatus(), is(NomadEventStream.Status.FAILED));
+    }
+
+    @Test
+    public void testFailureBeforeWatch() {
+        // GIVEN
+        events.handle(message("Allocation", "AllocationUpdated",
+                "{\"Allocation\": {\"JobID\": \"jenkins-1\", \"ClientStatus\": \"failed\"}}"));
+
+        // WHEN
+        CompletableFuture<String> failure = events.watchFailure("jenkins-1");
+
+        // THEN
+        assertThat(failure.isDone(), is(true));
+    }
+
+    @Test
+    public void testOtherJobsAreIgnored() {
+        // WHEN
+        events.handle(message("Allocation", "AllocationUpdated",
+                "{\"Allocation\": {\"JobID\": \"other-1\", \"ClientStatus\": \"failed\"}}"));
+
+        // THEN
+        assertThat(events.getState("other-1"), nullValue());
+    }
+
+    private static JsonObject message(String topic, String type, String payload) {
+        return JsonParser.parseString("{\"Index\": 1, \"Events\": [{\"Topic\": \"" + topic + "\", \"Type\": \"" + type
+                + "\", \"Payload\": " + payload + "}]}").getAsJsonObject();
+    }
+}
@@ -0,0 +1,66 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+/**
+ * Checks that the {@link NomadJobTemplate} renders jobs as expected.
+ */
+public class NomadJobTemplateTest {
+
+    private static final String JOB = "{\"Job\": {\"ID\": \"%WORKER_NAME%\", \"Namespace\": \"ns1\", \"Region\": \"regionA\", "
+            + "\"Env\": {\"SECRET\": \"%WORKER_SECRET%\", \"DIR\": \"%WORKER_DIR%\", \"NAME\": \"%WORKER_NAME%\"}}}";
+
+    @Test
+    public void testRender() {
+        // GIVEN
+        NomadJobTemplate template = new NomadJobTemplate(JOB);
+
+        // WHEN
+        String job = template.render("jenkins-1", "secret", "/tmp");
+
+        // THEN
+        assertThat(job, is("{\"Job\": {\"ID\": \"jenkins-1\", \"Namespace\": \"ns1\", \"Region\": \"regionA\", "
+                + "\"Env\": {\"SECRET\": \"secret\", \"DIR\": \"/tmp\", \"NAME\": \"jenkins-1\"}}}"));
+        assertThat(template.getNamespace(), is("ns1"));
+        assertThat(template.getRegion(), is("regionA"));
+    }
+
+    @Test
+    public void testRenderEscapesValues() {
+        // GIVEN
+        NomadJobTemplate template = new NomadJobTemplate("{\"Job\": {\"Dir\": \"%WORKER_DIR%\"}}");
+
+        // WHEN
+        String job = template.render("jenkins-1", "secret", "C:\\jenkins \"agent\"");
+
+        // THEN
+        assertThat(job, is("{\"Job\": {\"Dir\": \"C:\\\\jenkins \\\"agent\\\"\"}}"));
+        assertThat(template.getNamespace(), nullValue());
+        assertThat(template.getRegion(), nullValue());
+    }
+
+    @Test
+    public void testRequestBody() throws IOException {
+        // GIVEN
+        NomadJobTemplate template = new NomadJobTemplate(JOB);
+
+        // WHEN
+        RequestBody body = template.toRequestBody("jenkins-1", "secret", "/tmp");
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+
+        // THEN
+        assertThat(buffer.size(), is(body.contentLength()));
+        assertThat(buffer.readUtf8(), is(template.render("jenkins-1", "secret", "/tmp")));
+    }
+
+}
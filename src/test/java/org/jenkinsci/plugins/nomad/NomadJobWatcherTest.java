@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.jenkinsci.plugins.nomad.Api.JobInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Checks that the {@link NomadJobWatcher} keeps its snapshot up to date as expected.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NomadJobWatcherTest {
+
+    @Mock
+    NomadCloud cloud;
+
+    NomadJobWatcher watcher;
+
+    @Before
+    public void setUp() {
+        watcher = new NomadJobWatcher(cloud);
+    }
+
+    @Test
+    public void testUpdate() {
+        // GIVEN
+        JobInfo jobA = job("jenkins-A", 10L);
+        JobInfo jobB = job("jenkins-B", 11L);
+        watcher.update("jenkins", new NomadApi.JobList(11, new JobInfo[]{jobA, jobB}));
+
+        // WHEN
+        JobInfo jobAUnchanged = job("jenkins-A", 10L);
+        JobInfo jobC = job("jenkins-C", 12L);
+        watcher.update("jenkins", new NomadApi.JobList(12, new JobInfo[]{jobAUnchanged, jobC}));
+        Collection<JobInfo> jobs = watcher.getJobs("jenkins");
+
+        // THEN
+        assertThat(jobs.size(), is(2));
+        assertThat(watcher.getJob("jenkins-A"), sameInstance(jobA));
+        assertThat(watcher.getJob("jenkins-B"), nullValue());
+        assertThat(watcher.getJob("jenkins-C"), sameInstance(jobC));
+    }
+
+    @Test
+    public void testUpdateWithModifiedJob() {
+        // GIVEN
+        watcher.update("jenkins", new NomadApi.JobList(10, new JobInfo[]{job("jenkins-A", 10L)}));
+
+        // WHEN
+        JobInfo modified = job("jenkins-A", 13L);
+        watcher.update("jenkins", new NomadApi.JobList(13, new JobInfo[]{modified}));
+
+        // THEN
+        assertThat(watcher.getJob("jenkins-A"), sameInstance(modified));
+    }
+
+    @Test
+    public void testStatusCounts() {
+        // GIVEN
+        JobInfo dead = job("jenkins-B", 11L);
+        dead.setStatus("dead");
+        watcher.update("jenkins", new NomadApi.JobList(11, new JobInfo[]{job("jenkins-A", 10L), dead, job("jenkins-C", 11L)}));
+
+        // WHEN
+        Map<String, Map<String, Integer>> counts = watcher.getStatusCounts();
+
+        // THEN
+        assertThat(counts.get("jenkins").get("running"), is(2));
+        assertThat(counts.get("jenkins").get("dead"), is(1));
+    }
+
+    private JobInfo job(String id, Long modifyIndex) {
+        JobInfo job = new JobInfo(id, id, "service", "running", 50, null);
+        job.setModifyIndex(modifyIndex);
+        return job;
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadLaunchPipeline} adds waiting workers together and registers their jobs one by one without blocking.
+ */
+public class NomadLaunchPipelineTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor executor = tasks::add;
+    private final RecordingStages stages = new RecordingStages();
+
+    @Test
+    public void testWaitingWorkersAreAddedTogether() {
+        // GIVEN
+        NomadLaunchPipeline pipeline = new NomadLaunchPipeline(stages, executor, 100, 10);
+        List<NomadLaunch> a = launches("jenkins-a");
+        List<NomadLaunch> b = launches("jenkins-b", "jenkins-c");
+
+        // WHEN
+        pipeline.submit(a);
+        pipeline.submit(b);
+        runTasks();
+
+        // THEN
+        assertThat(stages.added.size(), is(1));
+        assertThat(stages.added.get(0), contains(a, b));
+        assertThat(stages.started, contains(a, b));
+        assertThat(pipeline.getQueueSize(), is(0));
+        assertThat(pipeline.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testRegistrationsInFlightAreCounted() {
+        // GIVEN
+        NomadLaunchPipeline pipeline = new NomadLaunchPipeline(stages, executor, 100, 1);
+        pipeline.submit(launches("jenkins-a"));
+
+        // WHEN
+        tasks.remove(0).run();
+
+        // THEN
+        assertThat(stages.started, is(empty()));
+        assertThat(pipeline.getInFlight(), is(1));
+        runTasks();
+        assertThat(pipeline.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testRegistrationsWaitForFreeSlot() {
+        // GIVEN
+        NomadLaunchPipeline pipeline = new NomadLaunchPipeline(stages, executor, 100, 1);
+        List<NomadLaunch> a = launches("jenkins-a");
+        List<NomadLaunch> b = launches("jenkins-b");
+        pipeline.submit(a);
+        pipeline.submit(b);
+
+        // WHEN
+        tasks.remove(0).run();
+
+        // THEN
+        assertThat(tasks.size(), is(1));
+        assertThat(pipeline.getQueueSize(), is(1));
+        runTasks();
+        assertThat(stages.started, contains(a, b));
+        assertThat(pipeline.getQueueSize(), is(0));
+    }
+
+    @Test
+    public void testRegistrationsWaitForTokenWithoutBlocking() {
+        // GIVEN
+        List<Long> delays = new ArrayList<>();
+        List<Runnable> scheduled = new ArrayList<>();
+        NomadLaunchPipeline pipeline = new NomadLaunchPipeline(stages, executor, (task, delay) -> {
+            scheduled.add(task);
+            delays.add(delay);
+        }, 1, 10);
+        List<NomadLaunch> a = launches("jenkins-a");
+        List<NomadLaunch> b = launches("jenkins-b");
+        List<NomadLaunch> c = launches("jenkins-c");
+
+        // WHEN
+        pipeline.submit(a);
+        pipeline.submit(b);
+        pipeline.submit(c);
+        runTasks();
+
+        // THEN
+        assertThat(stages.started, contains(a));
+        assertThat(delays.size(), is(2));
+        assertThat(delays.get(0) > 0 && delays.get(1) > delays.get(0), is(true));
+        assertThat(pipeline.getInFlight(), is(2));
+        scheduled.forEach(Runnable::run);
+        runTasks();
+        assertThat(stages.started, contains(a, b, c));
+        assertThat(pipeline.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testWorkersAreAddedInChunks() {
+        // GIVEN
+        NomadLaunchPipeline pipeline = new NomadLaunchPipeline(stages, executor, 100, 100);
+
+        // WHEN
+        for (int i = 0; i < NomadLaunchPipeline.MAX_WORKERS_PER_LOCK + 10; i++) {
+            pipeline.submit(launches("jenkins-" + i));
+        }
+        runTasks();
+
+        // THEN
+        assertThat(stages.added.size(), is(2));
+        assertThat(stages.added.get(0).size(), is(NomadLaunchPipeline.MAX_WORKERS_PER_LOCK));
+        assertThat(stages.added.get(1).size(), is(10));
+        assertThat(stages.started.size(), is(NomadLaunchPipeline.MAX_WORKERS_PER_LOCK + 10));
+    }
+
+    @Test
+    public void testFailedBatchesAreNotStarted() {
+        // GIVEN
+        NomadLaunchPipeline pipeline = new NomadLaunchPipeline(stages, executor, 100, 10);
+        List<NomadLaunch> a = launches("jenkins-a");
+        stages.rejected.add(a);
+
+        // WHEN
+        pipeline.submit(a);
+        runTasks();
+
+        // THEN
+        assertThat(stages.started, is(empty()));
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static List<NomadLaunch> launches(String... workerNames) {
+        List<NomadLaunch> launches = new ArrayList<>();
+        Arrays.stream(workerNames).forEach(name -> launches.add(new NomadLaunch(name, null, true)));
+        return launches;
+    }
+
+    private static final class RecordingStages implements NomadLaunchPipeline.Stages {
+        private final List<List<List<NomadLaunch>>> added = new ArrayList<>();
+        private final List<List<NomadLaunch>> started = new ArrayList<>();
+        private final List<List<NomadLaunch>> rejected = new ArrayList<>();
+
+        @Override
+        public List<List<NomadLaunch>> addWorkers(List<List<NomadLaunch>> batches) {
+            added.add(batches);
+            List<List<NomadLaunch>> accepted = new ArrayList<>(batches);
+            accepted.removeAll(rejected);
+            return accepted;
+        }
+
+        @Override
+        public void startWorkers(List<NomadLaunch> batch) {
+            started.add(batch);
+        }
+
+        @Override
+        public void failWorkers(List<NomadLaunch> batch, String message) {
+            throw new AssertionError("unexpected failure of " + batch + ": " + message);
+        }
+    }
+
+}
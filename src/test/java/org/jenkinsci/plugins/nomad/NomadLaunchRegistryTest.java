@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadLaunchRegistry} keeps its counters consistent.
+ */
+public class NomadLaunchRegistryTest {
+
+    private final NomadWorkerTemplate template = new NomadWorkerTemplate("jenkins", "", 1, false, 2, "", "");
+
+    @Test
+    public void testCountersFollowLaunches() {
+        // GIVEN
+        NomadLaunchRegistry registry = new NomadLaunchRegistry();
+        NomadLaunch planned = new NomadLaunch("jenkins-1", template, true);
+        NomadLaunch warm = new NomadLaunch("jenkins-2", template, false);
+
+        // WHEN
+        registry.add(planned);
+        registry.add(planned);
+        registry.add(warm);
+
+        // THEN
+        assertThat(registry.getPlannedLaunches(template), is(1));
+        assertThat(registry.getWarmLaunches(template), is(1));
+        assertThat(registry.getPlannedExecutors(), is(2));
+        assertThat(registry.getLaunches().size(), is(2));
+    }
+
+    @Test
+    public void testLaunchIsRemovedOnce() {
+        // GIVEN
+        NomadLaunchRegistry registry = new NomadLaunchRegistry();
+        NomadLaunch launch = new NomadLaunch("jenkins-1", template, true);
+        registry.add(launch);
+
+        // WHEN
+        boolean failed = registry.remove(launch);
+        NomadLaunch completed = registry.remove("jenkins-1");
+
+        // THEN
+        assertThat(failed, is(true));
+        assertThat(completed, is(nullValue()));
+        assertThat(registry.getPlannedLaunches(template), is(0));
+    }
+
+    @Test
+    public void testConcurrentLaunchesDoNotDrift() throws Exception {
+        // GIVEN
+        NomadLaunchRegistry registry = new NomadLaunchRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // WHEN
+        for (int i = 0; i < 1000; i++) {
+            NomadLaunch launch = new NomadLaunch("jenkins-" + i, template, true);
+            registry.add(launch);
+            // complete and fail every launch at the same time, only one of them must count
+            futures.add(executor.submit(() -> registry.remove(launch.getWorkerName())));
+            futures.add(executor.submit(() -> registry.remove(launch)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // THEN
+        assertThat(registry.getPlannedLaunches(template), is(0));
+        assertThat(registry.getPlannedExecutors(), is(0));
+        assertThat(registry.getLaunches().size(), is(0));
+    }
+
+}
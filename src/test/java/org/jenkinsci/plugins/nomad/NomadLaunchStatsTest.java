@@ -0,0 +1,62 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.jenkinsci.plugins.nomad.NomadLaunchTimeline.Milestone;
+import org.jenkinsci.plugins.nomad.NomadLaunchTimeline.Phase;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadLaunchStats} record the phases of a {@link NomadLaunchTimeline}.
+ */
+public class NomadLaunchStatsTest {
+
+    @Test
+    public void testPhasesAreRecordedUpToMilestone() {
+        // GIVEN
+        NomadLaunchTimeline timeline = new NomadLaunchTimeline();
+        timeline.mark(Milestone.QUEUED, 1000);
+        timeline.mark(Milestone.PROVISIONED, 1100);
+        timeline.mark(Milestone.REGISTERED, 1300);
+        timeline.mark(Milestone.CONNECTED, 9000);
+        NomadLaunchStats stats = new NomadLaunchStats();
+
+        // WHEN
+        stats.record("jenkins", timeline, Milestone.PROVISIONED, Milestone.CONNECTED);
+
+        // THEN
+        assertThat(stats.get("jenkins", Phase.QUEUE).getCount(), is(1L));
+        assertThat(stats.get("jenkins", Phase.QUEUE).getSum(), is(100L));
+        assertThat(stats.get("jenkins", Phase.REGISTRATION).getSum(), is(200L));
+        assertThat(stats.get("jenkins", Phase.LAUNCH).getSum(), is(7900L));
+        // unknown milestones (no event stream) are skipped
+        assertThat(stats.get("jenkins", Phase.PLACEMENT).getCount(), is(0L));
+        // the first task is not recorded yet
+        assertThat(stats.get("jenkins", Phase.TOTAL).getCount(), is(0L));
+        assertThat(stats.get("other", Phase.QUEUE), is(nullValue()));
+    }
+
+    @Test
+    public void testFirstTaskIsRecordedOnce() {
+        // GIVEN
+        NomadLaunchTimeline timeline = new NomadLaunchTimeline();
+        timeline.mark(Milestone.QUEUED, 1000);
+        timeline.mark(Milestone.CONNECTED, 9000);
+        NomadLaunchStats stats = new NomadLaunchStats();
+
+        // WHEN
+        boolean first = timeline.mark(Milestone.FIRST_TASK, 9500);
+        boolean second = timeline.mark(Milestone.FIRST_TASK, 20000);
+        stats.record("jenkins", timeline, Milestone.FIRST_TASK, Milestone.FIRST_TASK);
+
+        // THEN
+        assertThat(first, is(true));
+        assertThat(second, is(false));
+        assertThat(stats.get("jenkins", Phase.FIRST_TASK).getSum(), is(500L));
+        assertThat(stats.get("jenkins", Phase.TOTAL).getSum(), is(8500L));
+        assertThat(stats.get("jenkins", Phase.LAUNCH).getCount(), is(0L));
+    }
+
+}
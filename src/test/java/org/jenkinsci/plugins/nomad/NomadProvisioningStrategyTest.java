@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadProvisioningStrategy} splits the excess workload across several clouds.
+ */
+public class NomadProvisioningStrategyTest {
+
+    @Test
+    public void testSingleCloudGetsEverything() {
+        // WHEN
+        int[] workload = NomadProvisioningStrategy.split(7, new int[] {7}, new long[] {60000});
+
+        // THEN
+        assertThat(workload, is(new int[] {7}));
+    }
+
+    @Test
+    public void testWorkloadIsSplitByCapacityAndStartupTime() {
+        // WHEN
+        // same capacity, but the second cloud starts its workers three times as fast
+        int[] workload = NomadProvisioningStrategy.split(8, new int[] {8, 8}, new long[] {90000, 30000});
+
+        // THEN
+        assertThat(workload, is(new int[] {2, 6}));
+    }
+
+    @Test
+    public void testCapacityIsNotExceeded() {
+        // WHEN
+        int[] workload = NomadProvisioningStrategy.split(10, new int[] {10, 2, 0}, new long[] {60000, 1000, 1000});
+
+        // THEN
+        assertThat(workload, is(new int[] {8, 2, 0}));
+    }
+
+    @Test
+    public void testWorkloadWhichDoesNotFitIsLeftOver() {
+        // WHEN
+        int[] workload = NomadProvisioningStrategy.split(10, new int[] {3, 2}, new long[] {60000, 60000});
+
+        // THEN
+        assertThat(workload, is(new int[] {3, 2}));
+    }
+
+}
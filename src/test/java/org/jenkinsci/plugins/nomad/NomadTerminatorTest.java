@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.delete;
+import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * Checks that the {@link NomadTerminator} stops jobs in the background and keeps track of jobs which could not be stopped.
+ */
+public class NomadTerminatorTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(0);
+
+    @Test
+    public void testStop() throws InterruptedException {
+        // GIVEN
+        stubFor(delete(urlEqualTo("/v1/job/jenkins-1?namespace=ns1")).willReturn(ok()));
+        NomadTerminator terminator = new NomadTerminator(createCloud());
+
+        // WHEN
+        terminator.stop("jenkins-1", "ns1", null);
+        awaitEmptyQueue(terminator);
+
+        // THEN
+        verify(1, deleteRequestedFor(urlEqualTo("/v1/job/jenkins-1?namespace=ns1")));
+        assertThat(terminator.getFailed(), is(empty()));
+    }
+
+    @Test
+    public void testStopOfUnknownJobSucceeds() throws InterruptedException {
+        // GIVEN
+        stubFor(delete(urlEqualTo("/v1/job/jenkins-1")).willReturn(notFound()));
+        NomadTerminator terminator = new NomadTerminator(createCloud(), 1);
+
+        // WHEN
+        terminator.stop("jenkins-1", null, null);
+        awaitEmptyQueue(terminator);
+
+        // THEN
+        assertThat(terminator.getFailed(), is(empty()));
+    }
+
+    @Test
+    public void testFailedStopIsSentOncePerAttempt() throws InterruptedException {
+        // GIVEN
+        stubFor(delete(urlEqualTo("/v1/job/jenkins-1")).willReturn(serverError()));
+        NomadTerminator terminator = new NomadTerminator(createCloud(), 1);
+
+        // WHEN
+        terminator.stop("jenkins-1", null, null);
+        awaitEmptyQueue(terminator);
+
+        // THEN
+        verify(1, deleteRequestedFor(urlEqualTo("/v1/job/jenkins-1")));
+        assertThat(terminator.getFailed().size(), is(1));
+    }
+
+    @Test
+    public void testFailedStopIsRecordedAndRetried() throws InterruptedException {
+        // GIVEN
+        stubFor(delete(urlEqualTo("/v1/job/jenkins-1")).willReturn(serverError()));
+        NomadCloud cloud = createCloud();
+        NomadTerminator terminator = new NomadTerminator(cloud, 1);
+        terminator.stop("jenkins-1", null, null);
+        awaitEmptyQueue(terminator);
+        assertThat(terminator.getFailed().size(), is(1));
+
+        // WHEN
+        stubFor(delete(urlEqualTo("/v1/job/jenkins-1")).willReturn(ok()));
+        NomadTerminator reloaded = new NomadTerminator(cloud, 1);
+        reloaded.retryFailed();
+        awaitEmptyQueue(reloaded);
+
+        // THEN
+        // the NomadApi does not retry stops of the terminator
+        verify(2, deleteRequestedFor(urlEqualTo("/v1/job/jenkins-1")));
+        assertThat(reloaded.getFailed(), is(empty()));
+    }
+
+    private void awaitEmptyQueue(NomadTerminator terminator) throws InterruptedException {
+        for (int i = 0; i < 100 && terminator.getQueueSize() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(terminator.getQueueSize(), is(0));
+    }
+
+    private NomadCloud createCloud() {
+        return new NomadCloud("nomad", wireMockRule.baseUrl(), false, null, null, null, null, 1, "", false,
+                Collections.emptyList());
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link NomadTokenBucket} lets bursts through and spreads everything beyond them at the configured rate.
+ */
+public class NomadTokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstIsNotDelayed() {
+        // GIVEN
+        NomadTokenBucket bucket = new NomadTokenBucket(10, 10, 0);
+
+        // WHEN
+        long wait = 0;
+        for (int i = 0; i < 10; i++) {
+            wait += bucket.reserve(0);
+        }
+
+        // THEN
+        assertThat(wait, is(0L));
+    }
+
+    @Test
+    public void testPermitsBeyondBurstAreSpreadAtRate() {
+        // GIVEN
+        NomadTokenBucket bucket = new NomadTokenBucket(10, 10, 0);
+        for (int i = 0; i < 10; i++) {
+            bucket.reserve(0);
+        }
+
+        // WHEN
+        long first = bucket.reserve(0);
+        long second = bucket.reserve(0);
+
+        // THEN
+        assertThat(first, is(SECOND / 10));
+        assertThat(second, is(2 * SECOND / 10));
+    }
+
+    @Test
+    public void testTokensAreRefilledUpToCapacity() {
+        // GIVEN
+        NomadTokenBucket bucket = new NomadTokenBucket(10, 5, 0);
+        for (int i = 0; i < 5; i++) {
+            bucket.reserve(0);
+        }
+
+        // WHEN
+        long wait = 0;
+        for (int i = 0; i < 5; i++) {
+            wait += bucket.reserve(60 * SECOND);
+        }
+        long next = bucket.reserve(60 * SECOND);
+
+        // THEN
+        assertThat(wait, is(0L));
+        assertThat(next, is(SECOND / 10));
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.jenkinsci.plugins.nomad;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.util.FormValidation;
+import hudson.util.XStream2;
+
+/**
+ * Checks that the warm pool settings of a {@link NomadWorkerTemplate} are consistent and that the names it creates match its prefix.
+ */
+public class NomadWorkerTemplateTest {
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void testMaxIdleIsNeverLessThanMinIdle() {
+        // GIVEN
+        NomadWorkerTemplate template = createTemplate();
+
+        // WHEN
+        template.setMaxIdle(1);
+        template.setMinIdle(3);
+
+        // THEN
+        assertThat(template.getMaxIdle(), is(3));
+    }
+
+    @Test
+    public void testMaxIdleIsClampedOnLoad() {
+        // GIVEN
+        NomadWorkerTemplate template = createTemplate();
+        template.setMinIdle(3);
+        template.setMaxIdle(1);
+        XStream2 xstream = new XStream2();
+        String xml = xstream.toXML(template);
+
+        // WHEN
+        NomadWorkerTemplate loaded = (NomadWorkerTemplate) xstream.fromXML(xml);
+
+        // THEN
+        assertThat(xml, containsString("<maxIdle>1</maxIdle>"));
+        assertThat(xstream.toXML(loaded), containsString("<maxIdle>3</maxIdle>"));
+    }
+
+    @Test
+    public void testCheckMaxIdle() {
+        // GIVEN
+        NomadWorkerTemplate.DescriptorImpl descriptor = r.jenkins.getDescriptorByType(NomadWorkerTemplate.DescriptorImpl.class);
+
+        // WHEN
+        FormValidation invalid = descriptor.doCheckMaxIdle(3, 1);
+        FormValidation unlimited = descriptor.doCheckMaxIdle(3, 0);
+
+        // THEN
+        assertThat(invalid.kind, is(FormValidation.Kind.ERROR));
+        assertThat(unlimited.kind, is(FormValidation.Kind.OK));
+    }
+
+    @Test
+    public void testCreateBulkJobId() {
+        // GIVEN
+        NomadWorkerTemplate template = createTemplate();
+
+        // WHEN
+        String jobId = template.createBulkJobId("jenkins-1a2b3c4d");
+
+        // THEN
+        assertThat(jobId, is("jenkins-batch-1a2b3c4d"));
+    }
+
+    private NomadWorkerTemplate createTemplate() {
+        return new NomadWorkerTemplate("jenkins", "label", 1, true, 1, null, NomadWorkerTemplate.DescriptorImpl.defaultJobTemplate);
+    }
+
+}